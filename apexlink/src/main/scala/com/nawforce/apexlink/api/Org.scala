@@ -53,6 +53,14 @@ trait Org {
     */
   def flush(): Boolean
 
+  /** Block until all pending cache writes have completed.
+    *
+    * Flushing serialises metadata summaries and queues them for writing to the cache on a background thread so that
+    * it does not wait on the disk. Call this before exiting, or before loading another org from the same cache, to
+    * ensure the writes have been completed.
+    */
+  def awaitCacheWrites(): Unit
+
   /** Test if all metadata changes have been processed.
     *
     * The Package refresh function queues changes so that they may be processed in batches either when you call
@@ -14,11 +14,21 @@
 
 package com.nawforce.apexlink.api
 
+import com.nawforce.runtime.parsers.CodeParser
+
 /** Collection of Ops functions for changing global behaviours */
 object ServerOps {
   private var lazyBlocks: Boolean             = true
   private var duplicateObjectMonitor: Boolean = false
   private var autoFlush: Boolean              = true
+  private var packedCache: Boolean            = false
+  private var parserThreads: Int              = Runtime.getRuntime.availableProcessors()
+  private var parallelValidation: Boolean     = false
+  private var validationThreads: Int          = Runtime.getRuntime.availableProcessors()
+  private var pipelinedStream: Boolean        = false
+  private var fileWatching: Boolean           = false
+  private var flushQuietPeriod: Long          = 250
+  private var flushMaxDelay: Long             = 2000
 
   /** Are we using lazy blocks, this is enabled by default */
   def getLazyBlocks: Boolean = {
@@ -51,4 +61,120 @@ object ServerOps {
     autoFlush = enable
     current
   }
+
+  /** Is the parsed cache stored in a single pack file, this is disabled by default */
+  def getPackedCache: Boolean = {
+    packedCache
+  }
+
+  /** Update packed cache flag, only effects Orgs created after the change */
+  def setPackedCache(enable: Boolean): Boolean = {
+    val current = packedCache
+    packedCache = enable
+    current
+  }
+
+  /** Number of threads used to parse classes not available from the cache, defaults to the number of processors */
+  def getParserThreads: Int = {
+    parserThreads
+  }
+
+  /** Update number of parser threads, a value of 1 parses on the loading thread */
+  def setParserThreads(threads: Int): Int = {
+    val current = parserThreads
+    parserThreads = Math.max(1, threads)
+    current
+  }
+
+  /** Are types validated in parallel, this is disabled by default */
+  def getParallelValidation: Boolean = {
+    parallelValidation
+  }
+
+  /** Update parallel validation flag, only effects Orgs created after the change */
+  def setParallelValidation(enable: Boolean): Boolean = {
+    val current = parallelValidation
+    parallelValidation = enable
+    current
+  }
+
+  /** Number of threads used for parallel validation, defaults to the number of processors */
+  def getValidationThreads: Int = {
+    validationThreads
+  }
+
+  /** Update number of parallel validation threads, a value of 1 validates on the calling thread */
+  def setValidationThreads(threads: Int): Int = {
+    val current = validationThreads
+    validationThreads = Math.max(1, threads)
+    current
+  }
+
+  /** Are metadata generators run ahead of type construction on their own threads, this is disabled by default */
+  def getPipelinedStream: Boolean = {
+    pipelinedStream
+  }
+
+  /** Update pipelined stream flag, only effects Orgs created after the change */
+  def setPipelinedStream(enable: Boolean): Boolean = {
+    val current = pipelinedStream
+    pipelinedStream = enable
+    current
+  }
+
+  /** Are module directories watched for external changes, this is disabled by default */
+  def getFileWatching: Boolean = {
+    fileWatching
+  }
+
+  /** Update file watching flag, only effects auto-flushing Orgs created after the change */
+  def setFileWatching(enable: Boolean): Boolean = {
+    val current = fileWatching
+    fileWatching = enable
+    current
+  }
+
+  /** Time in milliseconds without refresh requests before they are processed, defaults to 250ms */
+  def getFlushQuietPeriod: Long = {
+    flushQuietPeriod
+  }
+
+  /** Update refresh quiet period, effects all auto-flushing Orgs */
+  def setFlushQuietPeriod(millis: Long): Long = {
+    val current = flushQuietPeriod
+    flushQuietPeriod = millis
+    current
+  }
+
+  /** Maximum time in milliseconds refresh requests are held waiting for a quiet period, defaults to 2000ms */
+  def getFlushMaxDelay: Long = {
+    flushMaxDelay
+  }
+
+  /** Update refresh max delay, effects all auto-flushing Orgs */
+  def setFlushMaxDelay(millis: Long): Long = {
+    val current = flushMaxDelay
+    flushMaxDelay = millis
+    current
+  }
+
+  /** Maximum number of DFA states held in the parser caches before they are cleared, defaults to 50000 */
+  def getParserCacheLimit: Int = {
+    CodeParser.getCacheLimit
+  }
+
+  /** Update parser cache limit, effects all subsequent parsing */
+  def setParserCacheLimit(states: Int): Int = {
+    CodeParser.setCacheLimit(states)
+  }
+
+  /** Are the parser caches re-warmed in the background after being cleared, this is disabled by default */
+  def getParserCacheRewarm: Boolean = {
+    CodeParser.getCacheRewarm
+  }
+
+  /** Update parser cache re-warm flag */
+  def setParserCacheRewarm(enable: Boolean): Boolean = {
+    CodeParser.setCacheRewarm(enable)
+  }
 }
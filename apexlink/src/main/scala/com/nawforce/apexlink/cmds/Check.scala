@@ -83,16 +83,23 @@ object Check {
       }
 
       // Output issues
-      if (depends) {
-        if (json) {
-          writeDependenciesAsJSON(org)
+      val status =
+        if (depends) {
+          if (json) {
+            writeDependenciesAsJSON(org)
+          } else {
+            writeDependenciesAsCSV(org)
+          }
+          STATUS_OK
         } else {
-          writeDependenciesAsCSV(org)
+          writeIssues(org, json, verbose)
         }
-        STATUS_OK
-      } else {
-        writeIssues(org, json, verbose)
+
+      // Cache writes happen in background, make sure they complete before we exit
+      if (!noCache) {
+        org.awaitCacheWrites()
       }
+      status
 
     } catch {
       case ex: Throwable =>
@@ -16,6 +16,7 @@ package com.nawforce.apexlink.deps
 
 import com.nawforce.apexlink.api.Org
 import com.nawforce.apexlink.org.OrgImpl
+import com.nawforce.apexlink.rpc.Cancellation
 import com.nawforce.apexlink.types.apex.{ApexClassDeclaration, ApexDeclaration}
 import com.nawforce.apexlink.types.core.DependencyHolder
 import com.nawforce.pkgforce.names.{Name, TypeIdentifier}
@@ -73,6 +74,7 @@ class DownWalker(org: Org, apexOnly: Boolean) {
     ignoring: Array[TypeIdentifier]
   ): Unit = {
     if (depth == 0) return
+    Cancellation.check()
     (node.extending ++ node.implementing ++ node.using)
       .filterNot(n => ignoring.contains(n))
       .foreach(id => {
@@ -43,30 +43,37 @@ final class RelativeTypeContext {
 
   /** Reset internal caching, for use during re-validation. */
   def reset(): Unit = {
-    typeCache.clear()
+    typeCache.synchronized { typeCache.clear() }
   }
 
-  /** Resolve the passed typeName relative to the context class, returns None for ghosted types. */
+  /** Resolve the passed typeName relative to the context class, returns None for ghosted types. The resolve is
+    * performed outside of the cache lock as it may need to resolve via other contexts.
+    */
   def resolve(typeName: TypeName): Option[TypeResponse] = {
-    typeCache.getOrElseUpdate(
-      typeName, {
-        val response =
-          // Workaround a stupid platform bug where the wrong type is used sometimes...
-          if (typeName.outer.nonEmpty) {
-            TypeResolver(typeName, contextTypeDeclaration.module) match {
-              case Right(td) => Right(td)
-              case Left(_)   => TypeResolver(typeName, contextTypeDeclaration)
-            }
-          } else {
-            TypeResolver(typeName, contextTypeDeclaration)
-          }
+    typeCache.synchronized { typeCache.get(typeName) } match {
+      case Some(response) => response
+      case None =>
+        val response = resolveUncached(typeName)
+        typeCache.synchronized { typeCache.getOrElseUpdate(typeName, response) }
+    }
+  }
 
-        if (response.isLeft && contextTypeDeclaration.module.isGhostedType(typeName))
-          None
-        else
-          Some(response)
+  private def resolveUncached(typeName: TypeName): Option[TypeResponse] = {
+    val response =
+      // Workaround a stupid platform bug where the wrong type is used sometimes...
+      if (typeName.outer.nonEmpty) {
+        TypeResolver(typeName, contextTypeDeclaration.module) match {
+          case Right(td) => Right(td)
+          case Left(_)   => TypeResolver(typeName, contextTypeDeclaration)
+        }
+      } else {
+        TypeResolver(typeName, contextTypeDeclaration)
       }
-    )
+
+    if (response.isLeft && contextTypeDeclaration.module.isGhostedType(typeName))
+      None
+    else
+      Some(response)
   }
 }
 
@@ -23,7 +23,7 @@ object Monitor {
 
   def push[T <: AnyRef](t: T): Unit = {
     if (ServerOps.getDuplicateObjectMonitoring)
-      map.add(t)
+      map.synchronized { map.add(t) }
   }
 
   def size: Int = map.size
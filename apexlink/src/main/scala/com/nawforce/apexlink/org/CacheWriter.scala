@@ -0,0 +1,170 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+
+package com.nawforce.apexlink.org
+
+import com.nawforce.pkgforce.diagnostics.LoggerOps
+import com.nawforce.pkgforce.documents.{PackageContext, ParsedCache}
+
+import java.util
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.locks.ReentrantLock
+
+/** Write-behind queue for parsed caches. Flushing types only serialises their summaries and queues them here, a
+  * single daemon thread performs the disk writes in bounded batches so refresh latency is independent of disk speed.
+  * The queue is bounded, if the writer falls too far behind queuing blocks until it catches up. Caches written to are
+  * saved each time the queue empties. Use drain() to wait for queued writes to complete, e.g. before exiting or
+  * reloading from the cache.
+  */
+object CacheWriter {
+
+  /** Maximum number of queued operations handled before pending counts are updated */
+  final val MAX_BATCH: Int = 256
+
+  /** Maximum number of queued operations before queuing blocks */
+  final val MAX_QUEUED: Int = 4096
+
+  // Returns false if the operation is incomplete & should be run again
+  private sealed trait Operation {
+    val cache: ParsedCache
+    def run(): Boolean
+  }
+
+  private final case class Upsert(
+    cache: ParsedCache,
+    context: PackageContext,
+    name: String,
+    contents: Array[Byte],
+    value: Array[Byte]
+  ) extends Operation {
+    override def run(): Boolean = {
+      cache.upsert(context, name, contents, value)
+      true
+    }
+  }
+
+  // Expiry is incremental, it is run again with the next batch until complete so other writes are not held up
+  private final case class Expire(cache: ParsedCache) extends Operation {
+    override def run(): Boolean = cache.expire()
+  }
+
+  private val queue   = new LinkedBlockingQueue[Operation](MAX_QUEUED)
+  private val lock    = new ReentrantLock()
+  private val drained = lock.newCondition()
+  private var pending = 0
+
+  private lazy val writer: Thread = {
+    val t = new Thread(() => run())
+    t.setDaemon(true)
+    t.setName("apex-link cache writer")
+    t.start()
+    t
+  }
+
+  /** Queue an upsert of an already serialised value. */
+  def upsert(
+    cache: ParsedCache,
+    context: PackageContext,
+    name: String,
+    contents: Array[Byte],
+    value: Array[Byte]
+  ): Unit = {
+    enqueue(Upsert(cache, context, name, contents, value))
+  }
+
+  /** Queue an expiry pass over the cache. */
+  def expire(cache: ParsedCache): Unit = {
+    enqueue(Expire(cache))
+  }
+
+  /** Number of queued operations not yet completed. */
+  def pendingCount: Int = {
+    lock.lock()
+    try {
+      pending
+    } finally {
+      lock.unlock()
+    }
+  }
+
+  /** Block until all queued operations have completed. */
+  def drain(): Unit = {
+    lock.lock()
+    try {
+      while (pending > 0) drained.await()
+    } finally {
+      lock.unlock()
+    }
+  }
+
+  private def enqueue(operation: Operation): Unit = {
+    writer
+    lock.lock()
+    try {
+      pending += 1
+    } finally {
+      lock.unlock()
+    }
+    queue.put(operation)
+  }
+
+  private def run(): Unit = {
+    val batch      = new util.ArrayList[Operation](MAX_BATCH)
+    val incomplete = new util.ArrayList[Operation]()
+    val unsaved    = new util.HashSet[ParsedCache]()
+    while (true) {
+      // Incomplete operations are carried into the next batch, don't wait for others if there are any
+      if (batch.isEmpty)
+        batch.add(queue.take())
+      queue.drainTo(batch, MAX_BATCH - batch.size)
+      batch.forEach(operation => {
+        val complete =
+          try {
+            operation.run()
+          } catch {
+            case ex: Throwable =>
+              LoggerOps.info("Cache write failed", ex)
+              true
+          }
+        if (!complete)
+          incomplete.add(operation)
+        unsaved.add(operation.cache)
+      })
+
+      // Save before reporting the batch complete so that drain() also waits for it
+      if (incomplete.isEmpty && queue.isEmpty) {
+        unsaved.forEach(cache => {
+          try {
+            cache.save()
+          } catch {
+            case ex: Throwable => LoggerOps.info("Cache save failed", ex)
+          }
+        })
+        unsaved.clear()
+      }
+
+      lock.lock()
+      try {
+        pending -= batch.size - incomplete.size
+        if (pending == 0)
+          drained.signalAll()
+      } finally {
+        lock.unlock()
+      }
+      batch.clear()
+      batch.addAll(incomplete)
+      incomplete.clear()
+    }
+  }
+}
@@ -21,7 +21,7 @@ import com.nawforce.apexlink.org.CompletionProvider.{
   preferredRules
 }
 import com.nawforce.apexlink.org.TextOps.TestOpsUtils
-import com.nawforce.apexlink.rpc.CompletionItemLink
+import com.nawforce.apexlink.rpc.{Cancellation, CompletionItemLink}
 import com.nawforce.apexlink.types.core._
 import com.nawforce.apexparser.{ApexLexer, ApexParser}
 import com.nawforce.pkgforce.documents.{ApexClassDocument, ApexTriggerDocument, MetadataDocument}
@@ -58,6 +58,7 @@ trait CompletionProvider {
       return emptyCompletions
     val parserAndCU    = classDetails._1.get
     val adjustedOffset = terminatedContent._2
+    Cancellation.check()
 
     // Attempt to find a searchTerm for dealing with dot expressions
     lazy val searchTerm =
@@ -85,6 +86,7 @@ trait CompletionProvider {
       findTokenAndIndex(parserAndCU._1, line, adjustedOffset, offset != adjustedOffset)
     val core       = new CodeCompletionCore(parserAndCU._1, preferredRules.asJava, ignoredTokens.asJava)
     val candidates = core.collectCandidates(tokenAndIndex._2, parserAndCU._2, MAX_STATES)
+    Cancellation.check()
 
     // Generate a list of possible keyword matches
     val keywords = candidates.tokens.asScala
@@ -14,7 +14,7 @@
 package com.nawforce.apexlink.org
 
 import com.nawforce.apexlink.org.TextOps.TestOpsUtils
-import com.nawforce.apexlink.rpc.LocationLink
+import com.nawforce.apexlink.rpc.{Cancellation, LocationLink}
 import com.nawforce.apexlink.types.apex.{ApexFullDeclaration, FullDeclaration, TriggerDeclaration}
 import com.nawforce.pkgforce.documents.{ApexClassDocument, ApexTriggerDocument, MetadataDocument}
 import com.nawforce.pkgforce.path.{IdLocatable, Locatable, PathLike, UnsafeLocatable}
@@ -32,6 +32,7 @@ trait DefinitionProvider {
     val sourceAndType = loadSourceAndType(path, content)
     if (sourceAndType.isEmpty)
       return Array.empty
+    Cancellation.check()
 
     locateFromValidation(sourceAndType.get._2, line, offset)
       .orElse({
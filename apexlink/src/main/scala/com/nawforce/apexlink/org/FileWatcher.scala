@@ -0,0 +1,214 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+
+package com.nawforce.apexlink.org
+
+import com.nawforce.pkgforce.diagnostics.LoggerOps
+import com.nawforce.pkgforce.documents.MetadataDocument
+import com.nawforce.pkgforce.path.PathLike
+import com.nawforce.runtime.platform.Path
+
+import java.io.IOException
+import java.nio.file.StandardWatchEventKinds.{ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY, OVERFLOW}
+import java.nio.file.attribute.BasicFileAttributes
+import java.nio.file.{
+  ClosedWatchServiceException,
+  FileVisitResult,
+  Files,
+  SimpleFileVisitor,
+  WatchEvent,
+  WatchKey,
+  WatchService
+}
+import java.util.concurrent.{ConcurrentHashMap, TimeUnit}
+import scala.collection.mutable
+import scala.jdk.CollectionConverters._
+
+/** Watches module directories for changes made without the client's knowledge, e.g. by branch switches or code
+  * generators, and queues RefreshRequests for them. Events are coalesced until there has been a QUIET_PERIOD without
+  * any, or MAX_DELAY has passed, so that a burst of changes is queued together and handled as one batch by the
+  * Flusher. Directories excluded by .forceignore are not watched. If events for a directory are lost it is rescanned
+  * instead.
+  */
+final class FileWatcher(org: OrgImpl, modules: Seq[Module]) {
+
+  // Watch keys for the directories being watched and the module that owns each
+  private val watched = new ConcurrentHashMap[WatchKey, (java.nio.file.Path, Module)]()
+
+  private val services: Map[java.nio.file.FileSystem, WatchService] =
+    modules
+      .map(module => nativePath(module.index.path).getFileSystem)
+      .distinct
+      .map(fs => (fs, fs.newWatchService()))
+      .toMap
+
+  modules.foreach(module => register(module, nativePath(module.index.path), None))
+
+  services.values.foreach(service => {
+    val t = new Thread(() => run(service))
+    t.setDaemon(true)
+    t.setName("apex-link file watcher")
+    t.start()
+  })
+
+  /** Number of directories being watched */
+  def watchedCount: Int = watched.size
+
+  /** Stop watching, any changes not yet queued are discarded */
+  def close(): Unit = {
+    services.values.foreach(service => {
+      try {
+        service.close()
+      } catch {
+        case _: IOException => ()
+      }
+    })
+  }
+
+  private def nativePath(path: PathLike): java.nio.file.Path =
+    path.native.asInstanceOf[java.nio.file.Path]
+
+  /** Register a directory tree for watching, visible files found in it are added to changed if passed */
+  private def register(
+    module: Module,
+    root: java.nio.file.Path,
+    changed: Option[mutable.Map[PathLike, Module]]
+  ): Unit = {
+    val service = services(root.getFileSystem)
+    try {
+      Files.walkFileTree(
+        root,
+        new SimpleFileVisitor[java.nio.file.Path] {
+          override def preVisitDirectory(
+            dir: java.nio.file.Path,
+            attrs: BasicFileAttributes
+          ): FileVisitResult = {
+            if (dir == root || module.index.isVisibleDirectory(new Path(dir))) {
+              val key = dir.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY)
+              watched.put(key, (dir, module))
+              FileVisitResult.CONTINUE
+            } else {
+              FileVisitResult.SKIP_SUBTREE
+            }
+          }
+
+          override def visitFile(
+            file: java.nio.file.Path,
+            attrs: BasicFileAttributes
+          ): FileVisitResult = {
+            changed.foreach(changed => addChange(module, new Path(file), changed))
+            FileVisitResult.CONTINUE
+          }
+
+          override def visitFileFailed(
+            file: java.nio.file.Path,
+            ex: IOException
+          ): FileVisitResult = {
+            FileVisitResult.CONTINUE
+          }
+        }
+      )
+    } catch {
+      case ex: IOException => LoggerOps.info(s"Failed to watch $root", ex)
+    }
+  }
+
+  private def addChange(
+    module: Module,
+    path: PathLike,
+    changed: mutable.Map[PathLike, Module]
+  ): Unit = {
+    if (module.isVisibleFile(path) && MetadataDocument(path).nonEmpty)
+      changed.put(path, module)
+  }
+
+  /** Add all visible files in a directory tree to changed, along with files in the directory that the module has
+    * types for but which no longer exist. Used when events for the directory have been lost.
+    */
+  private[org] def rescan(
+    module: Module,
+    dir: java.nio.file.Path,
+    changed: mutable.Map[PathLike, Module]
+  ): Unit = {
+    register(module, dir, Some(changed))
+    org
+      .withSnapshot(module.visibleTypes.values.flatMap(_.paths).toArray)
+      .filter(path => nativePath(path).getParent == dir && !path.exists)
+      .foreach(path => addChange(module, path, changed))
+  }
+
+  private def run(service: WatchService): Unit = {
+    try {
+      while (true) {
+        val changed = mutable.LinkedHashMap[PathLike, Module]()
+        val started = System.currentTimeMillis()
+        var key     = service.take()
+        while (key != null) {
+          handle(key, changed)
+          key =
+            if (System.currentTimeMillis() - started < FileWatcher.MAX_DELAY)
+              service.poll(FileWatcher.QUIET_PERIOD, TimeUnit.MILLISECONDS)
+            else
+              null
+        }
+
+        if (changed.nonEmpty) {
+          LoggerOps.debug(s"File watcher queued ${changed.size} changes")
+          changed.foreach(
+            change => org.queueMetadataRefresh(RefreshRequest(change._2.pkg, change._1))
+          )
+        }
+      }
+    } catch {
+      case _: ClosedWatchServiceException => ()
+      case _: InterruptedException        => ()
+    }
+  }
+
+  private def handle(key: WatchKey, changed: mutable.Map[PathLike, Module]): Unit = {
+    Option(watched.get(key)).foreach(dirAndModule => {
+      val (dir, module) = dirAndModule
+      key
+        .pollEvents()
+        .asScala
+        .foreach(event => {
+          if (event.kind() == OVERFLOW) {
+            LoggerOps.info(s"File watcher lost events for $dir, rescanning")
+            rescan(module, dir, changed)
+          } else {
+            val path = dir.resolve(event.asInstanceOf[WatchEvent[java.nio.file.Path]].context())
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+              // New directories may already contain files by the time they are registered
+              if (module.index.isVisibleDirectory(new Path(path)))
+                register(module, path, Some(changed))
+            } else {
+              addChange(module, new Path(path), changed)
+            }
+          }
+        })
+    })
+
+    if (!key.reset())
+      watched.remove(key)
+  }
+}
+
+object FileWatcher {
+
+  /** Time without events before changes are queued, in milliseconds */
+  final val QUIET_PERIOD: Long = 100
+
+  /** Maximum time changes are held before being queued, in milliseconds */
+  final val MAX_DELAY: Long = 2000
+}
@@ -14,88 +14,175 @@
 
 package com.nawforce.apexlink.org
 
+import com.nawforce.apexlink.api.ServerOps
 import com.nawforce.apexlink.memory.Monitor
+import com.nawforce.pkgforce.diagnostics.LoggerOps
 import com.nawforce.pkgforce.documents.ParsedCache
 import com.nawforce.pkgforce.memory.Cleanable
 import com.nawforce.pkgforce.path.PathLike
 
+import java.util.concurrent.TimeUnit
 import java.util.concurrent.locks.ReentrantLock
 import scala.collection.mutable
 
 case class RefreshRequest(pkg: PackageImpl, path: PathLike)
 
+/* Holds queued refresh requests until they are processed, refreshes & flushes are performed synchronously. */
 class Flusher(org: OrgImpl, parsedCache: Option[ParsedCache]) {
   protected val lock         = new ReentrantLock(true)
   protected val refreshQueue = new mutable.Queue[RefreshRequest]()
+  protected var firstQueued  = 0L
+  protected var lastQueued   = 0L
   private var expired        = false
 
   def isDirty: Boolean = {
-    lock.synchronized { refreshQueue.nonEmpty }
+    withLock { refreshQueue.nonEmpty }
   }
 
   def queue(request: RefreshRequest): Unit = {
-    lock.synchronized {
+    withLock {
+      val now = System.currentTimeMillis()
+      if (refreshQueue.isEmpty)
+        firstQueued = now
+      lastQueued = now
       refreshQueue.enqueue(request)
+      queued()
     }
   }
 
+  /** Refresh & flush any queued requests immediately. */
+  def flushNow(): Unit = {
+    withLock {
+      if (refreshQueue.nonEmpty)
+        refreshAndFlush()
+    }
+  }
+
+  /** Wait for queued requests to be refreshed & flushed. */
+  def awaitFlushed(): Unit = flushNow()
+
+  /** Refresh & flush queued requests. The queue is cleared even if this fails so that those waiting on it are
+    * released.
+    */
   def refreshAndFlush(): Boolean = {
     OrgImpl.current.withValue(org) {
-      lock.synchronized {
-        val packages = org.packages
-
-        val refreshed = packages
-          .map(pkg => {
-            pkg.refreshBatched(refreshQueue.filter(_.pkg == pkg).toSeq)
+      withLock {
+        try {
+          val packages = org.packages
+
+          val refreshed = packages
+            .map(pkg => {
+              pkg.refreshBatched(refreshQueue.filter(_.pkg == pkg).toSeq)
+            })
+            .foldLeft(false) {
+              _ || _
+            }
+
+          parsedCache.foreach(pc => {
+            packages.foreach(pkg => {
+              pkg.flush(pc)
+            })
+            if (!expired) {
+              CacheWriter.expire(pc)
+              expired = true
+            }
           })
-          .foldLeft(false) {
-            _ || _
-          }
 
-        parsedCache.foreach(pc => {
-          packages.foreach(pkg => {
-            pkg.flush(pc)
-          })
-          if (!expired) {
-            pc.expire()
-            expired = true
-          }
-        })
-
-        Monitor.reportDuplicateTypes()
-        Cleanable.clean()
-        refreshQueue.clear()
-        refreshed
+          org.publishSnapshot()
+          Monitor.reportDuplicateTypes()
+          Cleanable.clean()
+          refreshed
+        } finally {
+          refreshQueue.clear()
+          flushed()
+        }
       }
     }
   }
 
+  /** Stop processing queued requests, any not yet processed are discarded. */
+  def close(): Unit = ()
+
+  /** Called with the lock held after a request has been queued. */
+  protected def queued(): Unit = ()
+
+  /** Called with the lock held after the queue has been processed. */
+  protected def flushed(): Unit = ()
+
+  protected def withLock[T](op: => T): T = {
+    lock.lock()
+    try {
+      op
+    } finally {
+      lock.unlock()
+    }
+  }
 }
 
+/* Flusher that processes queued requests on a background thread. Requests are debounced, they are processed once
+ * none have been queued for the quiet period, or the max delay has passed since the first was queued, see
+ * ServerOps.setFlushQuietPeriod & ServerOps.setFlushMaxDelay. Use flushNow() to bypass the wait.
+ */
 class CacheFlusher(org: OrgImpl, parsedCache: Option[ParsedCache])
     extends Flusher(org, parsedCache)
     with Runnable {
 
+  private val queuedCondition  = lock.newCondition()
+  private val flushedCondition = lock.newCondition()
+  private var closed           = false
+
   private val t = new Thread(this)
   t.setDaemon(true)
   t.setName("apex-link cache flusher")
   t.start()
 
+  override def awaitFlushed(): Unit = {
+    withLock {
+      while (refreshQueue.nonEmpty && !closed) flushedCondition.await()
+    }
+  }
+
+  override def close(): Unit = {
+    withLock {
+      closed = true
+      queuedCondition.signalAll()
+      flushedCondition.signalAll()
+    }
+    if (Thread.currentThread() != t)
+      t.join()
+  }
+
+  override protected def queued(): Unit = queuedCondition.signalAll()
+
+  override protected def flushed(): Unit = flushedCondition.signalAll()
+
   override def run(): Unit = {
-    def queueSize: Int = lock.synchronized { refreshQueue.size }
-
-    while (true) {
-      // Wait for non-zero queue to be stable
-      var stable = false
-      while (!stable) {
-        val start = queueSize
-        Thread.sleep(250)
-        val end = queueSize
-        stable = start > 0 && start == end
-      }
+    while (!withLock(closed)) {
+      try {
+        withLock {
+          while (refreshQueue.isEmpty && !closed) queuedCondition.await()
+
+          // Wait for queue to settle, this may be cut short by flushNow()
+          var remaining = remainingDelay
+          while (refreshQueue.nonEmpty && remaining > 0 && !closed) {
+            queuedCondition.await(remaining, TimeUnit.MILLISECONDS)
+            remaining = remainingDelay
+          }
 
-      // Process refresh requests & flush
-      refreshAndFlush()
+          // Process refresh requests & flush
+          if (refreshQueue.nonEmpty && !closed)
+            refreshAndFlush()
+        }
+      } catch {
+        // A failed refresh has cleared the queue, log it & carry on with those queued later
+        case ex: Exception => LoggerOps.info("Refresh failed", ex)
+      }
     }
   }
+
+  private def remainingDelay: Long = {
+    val quietEnd = lastQueued + ServerOps.getFlushQuietPeriod
+    val maxEnd   = firstQueued + ServerOps.getFlushMaxDelay
+    Math.min(quietEnd, maxEnd) - System.currentTimeMillis()
+  }
 }
@@ -20,75 +20,188 @@ import com.nawforce.pkgforce.diagnostics._
 import com.nawforce.pkgforce.path.{Location, PathLike}
 import com.nawforce.runtime.platform.Path
 
+import java.util.concurrent.ConcurrentLinkedQueue
 import scala.collection.mutable
 
+/** Change to the issues of a file between published snapshots */
+final case class IssuesDelta(path: PathLike, added: Seq[Issue], removed: Seq[Issue])
+
 /** IssuesCollection implementation, holds Issues for each metadata file and tracks when they change to allow
   * clients to be more selective when pulling issues.
   */
 class IssuesManager extends IssuesCollection with IssueLogger {
+  // The log & tracking sets are updated from parser, flusher & reader threads so are only accessed holding the lock
+  // on this
   private val log             = mutable.HashMap[PathLike, List[Issue]]() withDefaultValue List()
   private val possibleMissing = mutable.HashSet[PathLike]()
   private val hasChanged      = mutable.HashSet[PathLike]()
+  private val unpublished     = mutable.HashSet[PathLike]()
+
+  // Issues as of the last published snapshot, see OrgImpl.withSnapshot
+  @volatile private var published: Map[PathLike, List[Issue]] = Map()
+
+  // Receiver of deltas between published snapshots, with the version of the snapshot
+  @volatile private var deltaListener: Option[(Int, Seq[IssuesDelta]) => Unit] = None
+  private var version                                                          = 0
 
-  def isEmpty: Boolean = log.isEmpty
+  // Deltas waiting to be passed to the listener, this is done outside of the lock on this so that a slow listener
+  // does not hold up issues being added, see publishSnapshot
+  private val undelivered  = new ConcurrentLinkedQueue[(Int, Seq[IssuesDelta])]()
+  private val deliveryLock = new Object()
 
-  def nonEmpty: Boolean = log.nonEmpty
+  def isEmpty: Boolean = synchronized { log.isEmpty }
+
+  def nonEmpty: Boolean = synchronized { log.nonEmpty }
+
+  // Set while the current thread is loading a temporary declaration, see discardingIssues
+  private val discarding = ThreadLocal.withInitial[Boolean](() => false)
 
   override def log(issue: Issue): Unit = add(issue)
 
-  def clear(): Unit = {
-    hasChanged.clear()
-    log.clear()
-  }
+  def clear(): Unit =
+    synchronized {
+      hasChanged.clear()
+      unpublished.addAll(log.keys)
+      log.clear()
+    }
 
+  /** Add an issue, this may be called while classes are being parsed in parallel. */
   def add(issue: diagnostics.Issue): Unit = {
-    hasChanged.add(issue.path)
-    log.put(issue.path, issue :: log(issue.path))
-    if (issue.diagnostic.category == MISSING_CATEGORY)
-      possibleMissing.add(issue.path)
-  }
+    if (discarding.get)
+      return
 
-  def pop(path: PathLike): List[diagnostics.Issue] = {
-    hasChanged.add(path)
-    val issues = log.getOrElse(path, Nil)
-    log.remove(path)
-    issues
+    synchronized {
+      hasChanged.add(issue.path)
+      unpublished.add(issue.path)
+      log.put(issue.path, issue :: log(issue.path))
+      if (issue.diagnostic.category == MISSING_CATEGORY)
+        possibleMissing.add(issue.path)
+    }
   }
 
-  def push(path: PathLike, issues: List[diagnostics.Issue]): Unit = {
-    hasChanged.add(path)
-    if (issues.nonEmpty)
-      log.put(path, issues)
+  /** Run an operation discarding the issues it logs on the current thread. The issues held are left untouched so
+    * this is safe to use during a snapshot read while the same file is being refreshed.
+    */
+  def discardingIssues[T](op: => T): T = {
+    val prior = discarding.get
+    discarding.set(true)
+    try {
+      op
+    } finally {
+      discarding.set(prior)
+    }
   }
 
-  def replaceUnusedIssues(path: PathLike, issues: Seq[diagnostics.Issue]): Unit = {
-    hasChanged.add(path)
-    val newIssues = log(path).filterNot(_.diagnostic.category == UNUSED_CATEGORY) ++ issues
-    if (newIssues.isEmpty)
+  def pop(path: PathLike): List[diagnostics.Issue] =
+    synchronized {
+      hasChanged.add(path)
+      unpublished.add(path)
+      val issues = log.getOrElse(path, Nil)
       log.remove(path)
-    else
-      log.put(path, newIssues)
+      issues
+    }
+
+  def push(path: PathLike, issues: List[diagnostics.Issue]): Unit =
+    synchronized {
+      hasChanged.add(path)
+      unpublished.add(path)
+      if (issues.nonEmpty)
+        log.put(path, issues)
+    }
+
+  /** Publish the current issues for use by snapshot reads, the delta listener is informed of any files whose issues
+    * have changed since the last publish. Returns true if any file's issues may have changed.
+    */
+  def publishSnapshot(): Boolean = {
+    val changed = synchronized {
+      val changed = unpublished.nonEmpty
+      val deltas  = deltaListener.map(_ => unpublishedDeltas()).getOrElse(Nil)
+      published = log.toMap
+      unpublished.clear()
+      if (deltas.nonEmpty) {
+        version += 1
+        undelivered.add((version, deltas))
+      }
+      changed
+    }
+    deliverDeltas()
+    changed
+  }
+
+  // Deltas are queued in version order so are delivered in that order, even if publishing from multiple threads
+  private def deliverDeltas(): Unit = {
+    deliveryLock.synchronized {
+      var next = undelivered.poll()
+      while (next != null) {
+        val (deltaVersion, deltas) = next
+        deltaListener.foreach(_(deltaVersion, deltas))
+        next = undelivered.poll()
+      }
+    }
   }
 
-  override def hasUpdatedIssues: Array[String] = {
-    hasChanged.map(_.toString).toArray
+  /** Set the receiver of issue deltas, these are provided as each snapshot is published. Versions increase by one
+    * with each set of deltas.
+    */
+  def setDeltaListener(listener: Option[(Int, Seq[IssuesDelta]) => Unit]): Unit =
+    synchronized {
+      deltaListener = listener
+    }
+
+  private def unpublishedDeltas(): Seq[IssuesDelta] = {
+    unpublished.toSeq
+      .sortBy(_.toString)
+      .flatMap(path => {
+        val before = published.getOrElse(path, Nil).toSet
+        val after  = log.getOrElse(path, Nil).toSet
+        val delta =
+          IssuesDelta(
+            path,
+            (after -- before).toSeq.sorted(Issue.ordering),
+            (before -- after).toSeq.sorted(Issue.ordering)
+          )
+        if (delta.added.isEmpty && delta.removed.isEmpty) None else Some(delta)
+      })
   }
 
+  def replaceUnusedIssues(path: PathLike, issues: Seq[diagnostics.Issue]): Unit =
+    synchronized {
+      hasChanged.add(path)
+      unpublished.add(path)
+      val newIssues = log(path).filterNot(_.diagnostic.category == UNUSED_CATEGORY) ++ issues
+      if (newIssues.isEmpty)
+        log.remove(path)
+      else
+        log.put(path, newIssues)
+    }
+
+  override def hasUpdatedIssues: Array[String] =
+    synchronized {
+      hasChanged.map(_.toString).toArray
+    }
+
   override def ignoreUpdatedIssues(path: String): Unit = {
     ignoreUpdatedIssuesInternal(Path(path))
   }
 
-  def ignoreUpdatedIssuesInternal(path: PathLike): Unit = {
-    hasChanged.remove(path)
-  }
+  def ignoreUpdatedIssuesInternal(path: PathLike): Unit =
+    synchronized {
+      hasChanged.remove(path)
+    }
 
   override def issuesForFile(path: String): Array[APIIssue] = {
     issuesForFileInternal(Path(path)).toArray
   }
 
+  /** Issues for a file, during a snapshot read these are from the last published snapshot. The file is marked as
+    * unchanged either way, a pending refresh that replaces its issues will mark it as changed again.
+    */
   def issuesForFileInternal(path: PathLike): Seq[Issue] = {
-    hasChanged.remove(path)
-    log.getOrElse(path, Nil).sorted(Issue.ordering)
+    val issues = synchronized {
+      hasChanged.remove(path)
+      if (OrgImpl.snapshotReads.get) published.getOrElse(path, Nil) else log.getOrElse(path, Nil)
+    }
+    issues.sorted(Issue.ordering)
   }
 
   override def issuesForFileLocation(path: String, location: IssueLocation): Array[APIIssue] = {
@@ -102,8 +215,7 @@ class IssuesManager extends IssuesCollection with IssueLogger {
       location.endLineNumber(),
       location.endCharOffset()
     )
-    log
-      .getOrElse(path, Nil)
+    synchronized { log.getOrElse(path, Nil) }
       .filter(issue => loc.contains(issue.diagnostic.location))
       .toArray[APIIssue]
   }
@@ -122,42 +234,66 @@ class IssuesManager extends IssuesCollection with IssueLogger {
     paths: Array[PathLike],
     includeWarnings: Boolean,
     maxIssuesPerFile: Int
-  ): Seq[Issue] = {
-    val files =
-      if (paths == null || paths.isEmpty)
-        log.keys.toSeq.sortBy(_.toString)
-      else
-        paths.toIterable
-
-    val buffer = mutable.ArrayBuffer[Issue]()
-    files.foreach(file => {
-      var fileIssues = log
-        .getOrElse(file, Nil)
-        .filter(
-          issue => includeWarnings || DiagnosticCategory.isErrorType(issue.diagnostic.category)
-        )
-        .sorted(Issue.ordering)
-      if (maxIssuesPerFile > 0)
-        fileIssues = fileIssues.take(maxIssuesPerFile)
-      buffer.addAll(fileIssues)
-      hasChanged.remove(file)
-    })
-    buffer.toSeq
+  ): Seq[Issue] =
+    synchronized {
+      val files =
+        if (paths == null || paths.isEmpty)
+          log.keys.toSeq.sortBy(_.toString)
+        else
+          paths.toIterable
+
+      val buffer = mutable.ArrayBuffer[Issue]()
+      files.foreach(file => {
+        var fileIssues = log
+          .getOrElse(file, Nil)
+          .filter(
+            issue => includeWarnings || DiagnosticCategory.isErrorType(issue.diagnostic.category)
+          )
+          .sorted(Issue.ordering)
+        if (maxIssuesPerFile > 0)
+          fileIssues = fileIssues.take(maxIssuesPerFile)
+        buffer.addAll(fileIssues)
+        hasChanged.remove(file)
+      })
+      buffer.toSeq
+    }
+
+  /** Issues for all files as per issuesForFilesInternal, but produced lazily a file at a time. The files & their
+    * issues are taken when called so later changes are not seen, files are marked as unchanged as they are reached.
+    */
+  def issuesIterator(includeWarnings: Boolean, maxIssuesPerFile: Int): Iterator[Issue] = {
+    val issues = synchronized {
+      if (OrgImpl.snapshotReads.get) published else log.toMap
+    }
+    issues.keys.toArray
+      .sortBy(_.toString)
+      .iterator
+      .flatMap(file => {
+        synchronized { hasChanged.remove(file) }
+        val fileIssues = issues(file)
+          .filter(
+            issue => includeWarnings || DiagnosticCategory.isErrorType(issue.diagnostic.category)
+          )
+          .sorted(Issue.ordering)
+        if (maxIssuesPerFile > 0) fileIssues.take(maxIssuesPerFile) else fileIssues
+      })
   }
 
   def getDiagnostics(path: PathLike): List[Diagnostic] =
-    log.getOrElse(path, Nil).map(_.diagnostic)
-
-  def getMissing: Seq[PathLike] = {
-    val missing = new mutable.ArrayBuffer[PathLike]()
-    possibleMissing.foreach(possible => {
-      val issues = log.getOrElse(possible, Nil).filter(_.diagnostic.category == MISSING_CATEGORY)
-      if (issues.nonEmpty) {
-        missing.append(possible)
-      }
-    })
-    possibleMissing.clear()
-    missing.foreach(possibleMissing.add)
-    missing.toSeq
-  }
+    synchronized { log.getOrElse(path, Nil) }.map(_.diagnostic)
+
+  def getMissing: Seq[PathLike] =
+    synchronized {
+      val missing = new mutable.ArrayBuffer[PathLike]()
+      possibleMissing.foreach(possible => {
+        val issues =
+          log.getOrElse(possible, Nil).filter(_.diagnostic.category == MISSING_CATEGORY)
+        if (issues.nonEmpty) {
+          missing.append(possible)
+        }
+      })
+      possibleMissing.clear()
+      missing.foreach(possibleMissing.add)
+      missing.toSeq
+    }
 }
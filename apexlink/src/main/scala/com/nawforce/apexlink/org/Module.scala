@@ -14,6 +14,7 @@
 
 package com.nawforce.apexlink.org
 
+import com.nawforce.apexlink.api.ServerOps
 import com.nawforce.apexlink.finding.TypeResolver.{TypeCache, TypeResponse}
 import com.nawforce.apexlink.finding.{TypeFinder, TypeResolver}
 import com.nawforce.apexlink.names.TypeNames
@@ -37,7 +38,10 @@ import com.nawforce.pkgforce.stream._
 import com.nawforce.runtime.parsers.SourceData
 
 import java.io.{PrintWriter, StringWriter}
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.{AtomicInteger, AtomicReference}
 import scala.collection.immutable.ArraySeq
+import scala.collection.concurrent.TrieMap
 import scala.collection.mutable
 
 class Module(val pkg: PackageImpl, val index: DocumentIndex, dependents: Seq[Module])
@@ -52,7 +56,19 @@ class Module(val pkg: PackageImpl, val index: DocumentIndex, dependents: Seq[Mod
 
   val isGulped: Boolean = pkg.isGulped
 
-  private[nawforce] var types = mutable.Map[TypeName, TypeDeclaration]()
+  // Parallel validation may add types while others are being resolved so needs a concurrent map
+  private[nawforce] var types: mutable.Map[TypeName, TypeDeclaration] =
+    if (ServerOps.getParallelValidation) TrieMap() else mutable.Map()
+
+  // Copy of types published for read-only requests, see OrgImpl.withSnapshot. The copy is paired with the count of
+  // changes to types before it was taken, changes are counted after being made so none are missed by a later publish.
+  private val snapshot    = new AtomicReference[(Int, Map[TypeName, TypeDeclaration])]((-1, Map()))
+  private val typeChanges = new AtomicInteger()
+
+  // Types added during a snapshot read, these are local to the reading thread & discarded when the read ends. They
+  // are also deferred to be added to types the next time those are accessed outside of a snapshot read.
+  private val snapshotOverlay = new ThreadLocal[Map[TypeName, TypeDeclaration]]()
+  private val deferredTypes   = new ConcurrentLinkedQueue[(TypeName, TypeDeclaration)]()
   private val schemaManager   = SchemaSObjectType(this)
 
   def freeze(): Unit = {
@@ -61,28 +77,73 @@ class Module(val pkg: PackageImpl, val index: DocumentIndex, dependents: Seq[Mod
     upsertMetadata(schemaSObjectType)
     upsertMetadata(schemaSObjectType, Some(TypeName(schemaSObjectType.name)))
 
-    new StreamDeployer(this, PackageStream.eventStream(index), types)
+    new StreamDeployer(this, PackageStream.eventStream(index, ServerOps.getPipelinedStream), types)
   }
 
   override def toString: String = s"Module(${index.path})"
 
   def schemaSObjectType: SchemaSObjectType = schemaManager
-  def any: AnyDeclaration                  = types(TypeNames.Any).asInstanceOf[AnyDeclaration]
-  def labels: LabelDeclaration             = types(TypeNames.Label).asInstanceOf[LabelDeclaration]
+
+  // Accessors use visibleTypes so that read-only requests see the published snapshot rather than types being changed
+  def any: AnyDeclaration      = visibleTypes(TypeNames.Any).asInstanceOf[AnyDeclaration]
+  def labels: LabelDeclaration = visibleTypes(TypeNames.Label).asInstanceOf[LabelDeclaration]
   def interviews: InterviewDeclaration =
-    types(TypeNames.Interview).asInstanceOf[InterviewDeclaration]
-  def pages: PageDeclaration = types(TypeNames.Page).asInstanceOf[PageDeclaration]
+    visibleTypes(TypeNames.Interview).asInstanceOf[InterviewDeclaration]
+  def pages: PageDeclaration = visibleTypes(TypeNames.Page).asInstanceOf[PageDeclaration]
   def components: ComponentDeclaration =
-    types(TypeNames.Component).asInstanceOf[ComponentDeclaration]
+    visibleTypes(TypeNames.Component).asInstanceOf[ComponentDeclaration]
   def nonTestClasses: Iterable[ApexClassDeclaration] =
-    types.values.collect {
+    visibleTypes.values.collect {
       case ac: ApexClassDeclaration if !ac.inTest => ac
     }
   def testClasses: Iterable[ApexClassDeclaration] =
-    types.values.collect {
+    visibleTypes.values.collect {
       case ac: ApexClassDeclaration if ac.inTest => ac
     }
 
+  /** Publish the current types as the snapshot for read-only requests, a no-op if they have not changed. Returns
+    * true if the types had changed.
+    */
+  private[nawforce] def publishSnapshot(): Boolean = {
+    addDeferredTypes()
+    val published = snapshot.get
+    val changes   = typeChanges.get
+    if (changes != published._1) {
+      // Copy before replacing so that a change made during the copy leaves the snapshot stale
+      snapshot.compareAndSet(published, (changes, types.toMap))
+      true
+    } else {
+      false
+    }
+  }
+
+  /** Types visible to the current thread, the last published snapshot during a read-only request. */
+  private[nawforce] def visibleTypes: collection.Map[TypeName, TypeDeclaration] = {
+    if (OrgImpl.snapshotReads.get) {
+      val overlay = snapshotOverlay.get
+      if (overlay == null) snapshot.get._2 else snapshot.get._2 ++ overlay
+    } else {
+      addDeferredTypes()
+      types
+    }
+  }
+
+  private def addDeferredTypes(): Unit = {
+    var deferred = deferredTypes.poll()
+    while (deferred != null) {
+      if (!types.contains(deferred._1)) {
+        types.put(deferred._1, deferred._2)
+        typeChanges.incrementAndGet()
+      }
+      deferred = deferredTypes.poll()
+    }
+  }
+
+  /** Discard types added by the current thread during a snapshot read, see OrgImpl.withSnapshot */
+  private[nawforce] def discardSnapshotOverlay(): Unit = {
+    snapshotOverlay.remove()
+  }
+
   /** Count of loaded types, for debug info */
   def typeCount: Int = types.size
 
@@ -100,14 +161,14 @@ class Module(val pkg: PackageImpl, val index: DocumentIndex, dependents: Seq[Mod
 
   /* Iterator over available types */
   def getTypes: Iterable[TypeDeclaration] = {
-    types.values
+    visibleTypes.values
   }
 
   /** Iterate metadata defined types, this will include referenced platform SObjects irrespective of if they have been
     * extended or not which is perhaps not quite accurate to the method name.
     */
   def getMetadataDefinedTypeIdentifiers(apexOnly: Boolean): Iterable[TypeIdentifier] = {
-    types.values
+    visibleTypes.values
       .collect {
         case x: ApexDeclaration                 => x
         case x: SObjectDeclaration if !apexOnly => x
@@ -117,6 +178,7 @@ class Module(val pkg: PackageImpl, val index: DocumentIndex, dependents: Seq[Mod
 
   /* Search for a specific outer or inner type */
   def moduleType(typeName: TypeName): Option[TypeDeclaration] = {
+    val types = visibleTypes
     types
       .get(typeName)
       .orElse(
@@ -142,6 +204,7 @@ class Module(val pkg: PackageImpl, val index: DocumentIndex, dependents: Seq[Mod
     } else {
       types.remove(typeName)
     }
+    typeChanges.incrementAndGet()
   }
 
   def isGhostedType(typeName: TypeName): Boolean = pkg.isGhostedType(typeName)
@@ -151,7 +214,15 @@ class Module(val pkg: PackageImpl, val index: DocumentIndex, dependents: Seq[Mod
 
   // Upsert some metadata to the package
   def upsertMetadata(td: TypeDeclaration, altTypeName: Option[TypeName] = None): Unit = {
-    types.put(altTypeName.getOrElse(td.typeName), td)
+    val typeName = altTypeName.getOrElse(td.typeName)
+    if (OrgImpl.snapshotReads.get) {
+      // Types are not shared with a refresh that may be in progress, so only visible to this read
+      snapshotOverlay.set(Option(snapshotOverlay.get).getOrElse(Map()) + (typeName -> td))
+      deferredTypes.add((typeName, td))
+    } else {
+      types.put(typeName, td)
+      typeChanges.incrementAndGet()
+    }
   }
 
   // Remove some metadata from the package
@@ -162,12 +233,13 @@ class Module(val pkg: PackageImpl, val index: DocumentIndex, dependents: Seq[Mod
 
   def removeMetadata(typeName: TypeName): Unit = {
     types.remove(typeName)
+    typeChanges.incrementAndGet()
   }
 
   // Add dependencies for Apex types to a map
   def populateDependencies(dependencies: java.util.Map[String, Array[String]]): Unit = {
     val typeCache = new TypeCache()
-    types.values.foreach {
+    visibleTypes.values.foreach {
       case td: ApexClassDeclaration =>
         val depends = mutable.Set[TypeId]()
         td.gatherDependencies(depends, apexOnly = false, outerTypesOnly = true, typeCache)
@@ -253,6 +325,7 @@ class Module(val pkg: PackageImpl, val index: DocumentIndex, dependents: Seq[Mod
   def findModuleType(typeName: TypeName): Option[TypeDeclaration] = {
     // Use aliased type name here so we don't mishandle an ambiguous typename when searching
     val targetType = TypeNames.aliasOrReturn(typeName)
+    val types      = visibleTypes
 
     // Direct hit
     var declaration = types.get(targetType)
@@ -393,6 +466,7 @@ class Module(val pkg: PackageImpl, val index: DocumentIndex, dependents: Seq[Mod
         removeSObjectTypes(sObjectDir.basename)
       case _ => types.remove(doc.typeName(namespace))
     }
+    typeChanges.incrementAndGet()
   }
 
   private def removeSObjectTypes(sobjectName: String): Unit = {
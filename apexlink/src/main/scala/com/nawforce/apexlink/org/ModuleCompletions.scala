@@ -63,7 +63,7 @@ trait ModuleCompletions {
 
         if (partCount == 1) {
           // Match on first character of only part against any class name
-          module.types
+          module.visibleTypes
             .filter(
               kv =>
                 parts.head.isEmpty || kv._1.name.value.take(1).equalsIgnoreCase(parts.head.take(1))
@@ -74,7 +74,7 @@ trait ModuleCompletions {
         } else if (partCount == 2) {
           // Match on first character of inner type, if we can find the outer
           val typeName = TypeName(Name(parts.head), Seq(), namespace.map(ns => TypeName(ns)))
-          module.types
+          module.visibleTypes
             .get(typeName)
             .collect { case td: ApexClassDeclaration => td }
             .map(td => {
@@ -93,7 +93,7 @@ trait ModuleCompletions {
       })
       .getOrElse {
         // Return all classes in module when no prefix
-        module.types
+        module.visibleTypes
           .collect { case (_, td: ApexClassDeclaration) => td }
           .flatMap(td => CompletionItemLink(td))
           .toArray
@@ -31,6 +31,7 @@ import com.nawforce.runtime.platform.Path
 
 import java.io.File
 import java.util
+import java.util.concurrent.atomic.AtomicInteger
 import java.util.jar.JarFile
 import scala.collection.immutable.ArraySeq
 import scala.collection.mutable
@@ -50,12 +51,18 @@ class OrgImpl(val path: PathLike, initWorkspace: Option[Workspace]) extends Org
     */
   private[nawforce] val issueManager = new IssuesManager
 
+  /** Count of changed snapshots published, see publishedVersion */
+  private val snapshotVersion = new AtomicInteger()
+
   /** Manager for post validation plugins */
   private[nawforce] val pluginsManager = new PluginsManager
 
   /** Parsed Apex data cache, the cache holds summary information about Apex types to speed startup */
   private[nawforce] val parsedCache =
-    ParsedCache.create(MurmurHash3.stringHash(OrgImpl.implementationBuild)) match {
+    ParsedCache.create(
+      MurmurHash3.stringHash(OrgImpl.implementationBuild),
+      if (ServerOps.getPackedCache) PackBackend else DirectoryBackend
+    ) match {
       case Right(pc) => Some(pc)
       case Left(err) => LoggerOps.info(err); None
     }
@@ -108,16 +115,36 @@ class OrgImpl(val path: PathLike, initWorkspace: Option[Workspace]) extends Org
       // Finally, freeze everything
       val all = packages ++ unmanaged
       all.foreach(_.freeze())
-      CodeParser.clearCaches()
+      CodeParser.trimCaches()
       all
     }
   }
 
+  /* Publish the loaded types for read-only requests, this is repeated after each refresh. */
+  publishSnapshot()
+
   /** After loading packages we want to flush, but flushing depends on the package list being available. */
   private val initialFlush =
     if (autoFlush)
       flusher.refreshAndFlush()
 
+  /** Watcher queuing refreshes for external changes, only used when auto-flushing. */
+  private[nawforce] val fileWatcher: Option[FileWatcher] =
+    if (autoFlush && ServerOps.getFileWatching)
+      Some(new FileWatcher(this, packages.flatMap(_.orderedModules)))
+    else
+      None
+
+  /** Stop watching for external changes & processing queued refreshes, waits for queued cache writes to complete
+    * before closing the cache.
+    */
+  def close(): Unit = {
+    fileWatcher.foreach(_.close())
+    flusher.close()
+    CacheWriter.drain()
+    parsedCache.foreach(_.close())
+  }
+
   /** All orgs have an unmanaged package, it has to be the last entry in 'packages'. */
   val unmanaged: PackageImpl = packages.last
 
@@ -138,6 +165,47 @@ class OrgImpl(val path: PathLike, initWorkspace: Option[Workspace]) extends Org
       false
   }
 
+  /** Refresh & flush queued metadata changes now, rather than waiting for them to settle */
+  def flushNow(): Unit = {
+    flusher.flushNow()
+  }
+
+  /** Wait for queued metadata changes to be refreshed & flushed */
+  def awaitFlushed(): Unit = {
+    flusher.awaitFlushed()
+  }
+
+  /** Wait for queued cache writes to complete */
+  override def awaitCacheWrites(): Unit = {
+    CacheWriter.drain()
+  }
+
+  /** Publish current types & issues as the snapshot used by read-only requests. */
+  private[nawforce] def publishSnapshot(): Unit = {
+    val typesChanged  = packages.flatMap(_.modules).map(_.publishSnapshot()).contains(true)
+    val issuesChanged = issueManager.publishSnapshot()
+    if (typesChanged || issuesChanged)
+      snapshotVersion.incrementAndGet()
+  }
+
+  /** Version of the published snapshot, this changes each time a changed snapshot is published. */
+  def publishedVersion: Int = snapshotVersion.get
+
+  /** Run a read-only operation against the last published snapshot. Type lookups & issuesForFile will not see the
+    * effect of a refresh in progress, so the operation need not wait for pending refreshes to complete.
+    */
+  def withSnapshot[T](op: => T): T = {
+    val prior = OrgImpl.snapshotReads.get
+    OrgImpl.snapshotReads.set(true)
+    try {
+      op
+    } finally {
+      OrgImpl.snapshotReads.set(prior)
+      if (!prior)
+        packages.foreach(_.modules.foreach(_.discardSnapshotOverlay()))
+    }
+  }
+
   /** Queue a metadata refresh request */
   def queueMetadataRefresh(request: RefreshRequest): Unit = {
     flusher.queue(request)
@@ -468,6 +536,11 @@ object OrgImpl {
   /** Access the in-scope Org */
   private[nawforce] val current: DynamicVariable[OrgImpl] = new DynamicVariable[OrgImpl](null)
 
+  /** Is the current thread reading from published snapshots, see withSnapshot. This is not inherited so that pool
+    * threads started during a snapshot read do not later read snapshots while refreshing.
+    */
+  private[nawforce] val snapshotReads: ThreadLocal[Boolean] = ThreadLocal.withInitial(() => false)
+
   /** Log an issue against the in-scope org */
   private[nawforce] def log(issue: Issue): Unit = {
     if (issue.path != null)
@@ -124,7 +124,7 @@ trait PackageAPI extends Package {
   override def getSummaryOfType(typeId: TypeIdentifier): TypeSummary = {
     if (typeId != null && typeId.namespace == namespace) {
       orderedModules
-        .flatMap(_.types.get(typeId.typeName))
+        .flatMap(_.visibleTypes.get(typeId.typeName))
         .filter(_.isInstanceOf[ApexDeclaration])
         .map(_.asInstanceOf[ApexDeclaration].summary)
         .headOption
@@ -350,7 +350,7 @@ trait PackageAPI extends Package {
       td.paths.foreach(path => org.issues.pop(path))
       td.preReValidate()
     })
-    tds.foreach(_.validate())
+    ValidationScheduler.validate(tds)(_.validate())
   }
 
   private def getTypesWithMissingIssues: Seq[TypeId] = {
@@ -133,22 +133,21 @@ class PackageImpl(
       case Some(doc: ApexClassDocument) =>
         getPackageModule(path)
           .map(module => {
-            val existingIssues = org.issueManager.pop(path)
-            val parser         = CodeParser(doc.path, SourceData(source.getBytes(StandardCharsets.UTF_8)))
-            val result         = parser.parseClassReturningParser()
-            try {
-              (
-                Some(result.value),
-                CompilationUnit
-                  .construct(parser, module, doc.name, result.value._2)
-                  .map(_.typeDeclaration)
-              )
-            } catch {
-              case ex: Throwable =>
-                LoggerOps.info(s"CST construction failed for ${doc.path}", ex)
-                (None, None)
-            } finally {
-              org.issueManager.push(path, existingIssues)
+            org.issueManager.discardingIssues {
+              val parser = CodeParser(doc.path, SourceData(source.getBytes(StandardCharsets.UTF_8)))
+              val result = parser.parseClassReturningParser()
+              try {
+                (
+                  Some(result.value),
+                  CompilationUnit
+                    .construct(parser, module, doc.name, result.value._2)
+                    .map(_.typeDeclaration)
+                )
+              } catch {
+                case ex: Throwable =>
+                  LoggerOps.info(s"CST construction failed for ${doc.path}", ex)
+                  (None, None)
+              }
             }
           })
           .getOrElse((None, None))
@@ -164,17 +163,16 @@ class PackageImpl(
       case Some(doc: ApexTriggerDocument) =>
         getPackageModule(path)
           .map(module => {
-            val existingIssues = org.issueManager.pop(path)
-            val parser         = CodeParser(doc.path, SourceData(source.getBytes(StandardCharsets.UTF_8)))
-            val result         = parser.parseTriggerReturningParser()
-            try {
-              (Some(result.value), TriggerDeclaration.construct(parser, module, result.value._2))
-            } catch {
-              case ex: Throwable =>
-                LoggerOps.info(s"CST construction failed for ${doc.path}", ex)
-                (None, None)
-            } finally {
-              org.issueManager.push(path, existingIssues)
+            org.issueManager.discardingIssues {
+              val parser = CodeParser(doc.path, SourceData(source.getBytes(StandardCharsets.UTF_8)))
+              val result = parser.parseTriggerReturningParser()
+              try {
+                (Some(result.value), TriggerDeclaration.construct(parser, module, result.value._2))
+              } catch {
+                case ex: Throwable =>
+                  LoggerOps.info(s"CST construction failed for ${doc.path}", ex)
+                  (None, None)
+              }
             }
           })
           .getOrElse((None, None))
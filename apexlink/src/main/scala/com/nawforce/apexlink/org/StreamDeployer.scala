@@ -14,6 +14,7 @@
 
 package com.nawforce.apexlink.org
 
+import com.nawforce.apexlink.api.ServerOps
 import com.nawforce.apexlink.finding.TypeResolver.TypeCache
 import com.nawforce.apexlink.names.TypeNames.TypeNameUtils
 import com.nawforce.apexlink.types.apex.{FullDeclaration, SummaryApex, TriggerDeclaration}
@@ -25,9 +26,10 @@ import com.nawforce.pkgforce.documents._
 import com.nawforce.pkgforce.names._
 import com.nawforce.pkgforce.stream._
 
-import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.{ConcurrentHashMap, ForkJoinPool}
 import scala.collection.immutable.ArraySeq
 import scala.collection.parallel.CollectionConverters._
+import scala.collection.parallel.ForkJoinTaskSupport
 import scala.collection.{BufferedIterator, mutable}
 import scala.jdk.CollectionConverters._
 
@@ -39,7 +41,7 @@ import scala.jdk.CollectionConverters._
   */
 class StreamDeployer(
   module: Module,
-  events: Iterator[PackageEvent],
+  events: PackageEventStream,
   types: mutable.Map[TypeName, TypeDeclaration]
 ) {
   load()
@@ -48,18 +50,23 @@ class StreamDeployer(
     val start          = java.lang.System.currentTimeMillis()
     val basicTypesSize = types.size
 
-    // Process package events, these must follow the publishing order from pkgforce
-    PlatformTypes.withLoadingObserver(module.schemaSObjectType) {
-      val bufferedIterator = events.buffered
-      consumeLabels(bufferedIterator)
-      val components = consumeComponents(bufferedIterator)
-      val pages      = consumePages(bufferedIterator)
-      consumeFlows(bufferedIterator)
-      consumeSObjects(bufferedIterator)
-      consumeClasses(bufferedIterator)
-      consumeTriggers(bufferedIterator)
-      components.validate()
-      pages.validate()
+    // Process package events, these must follow the publishing order from pkgforce. The stream is closed so that
+    // pipelined generators are stopped should loading fail before the events are exhausted.
+    try {
+      PlatformTypes.withLoadingObserver(module.schemaSObjectType) {
+        val bufferedIterator = events.buffered
+        consumeLabels(bufferedIterator)
+        val components = consumeComponents(bufferedIterator)
+        val pages      = consumePages(bufferedIterator)
+        consumeFlows(bufferedIterator)
+        consumeSObjects(bufferedIterator)
+        consumeClasses(bufferedIterator)
+        consumeTriggers(bufferedIterator)
+        components.validate()
+        pages.validate()
+      }
+    } finally {
+      events.close()
     }
 
     // Run plugins over loaded types DependentTypes
@@ -128,28 +135,26 @@ class StreamDeployer(
     parseAndValidateClasses(missingClasses)
   }
 
-  /** Parse a collection of Apex classes, insert them and validate them. */
+  /** Parse a collection of Apex classes, insert them and validate them. Parsing is performed in parallel but the
+    * types are inserted in document order so the outcome does not depend on thread scheduling.
+    */
   private def parseAndValidateClasses(docs: ArraySeq[ClassDocument]): Unit = {
     LoggerOps.debugTime(s"Parsed ${docs.length} classes", docs.nonEmpty) {
-      val decls = docs
-        .flatMap(
-          doc =>
-            doc.path.readSourceData() match {
-              case Left(_) => None
-              case Right(data) =>
-                LoggerOps.debugTime(s"Parsed ${doc.path}") {
-                  FullDeclaration
-                    .create(module, doc, data, forceConstruct = false)
-                    .map(td => {
-                      types.put(td.typeName, td)
-                      td
-                    })
-                }
-            }
-        )
+      val org = OrgImpl.current.value
+      val parsed =
+        if (docs.length > 1 && ServerOps.getParserThreads > 1) {
+          val parDocs = docs.par
+          parDocs.tasksupport = StreamDeployer.parserTaskSupport
+          parDocs.map(doc => OrgImpl.current.withValue(org) { parseClass(doc) }).seq
+        } else {
+          docs.map(parseClass)
+        }
+
+      val decls = parsed.flatten
+      decls.foreach(td => types.put(td.typeName, td))
 
       // Validate the classes, this must be last due to mutual dependence
-      decls.foreach { decl =>
+      ValidationScheduler.validate(decls) { decl =>
         try {
           decl.validate()
         } catch {
@@ -160,34 +165,66 @@ class StreamDeployer(
     }
   }
 
-  /** Validate summary classes & log diagnostics, those with any invalid dependents are discarded. */
+  private def parseClass(doc: ClassDocument): Option[FullDeclaration] = {
+    doc.path.readSourceData() match {
+      case Left(_) => None
+      case Right(data) =>
+        LoggerOps.debugTime(s"Parsed ${doc.path}") {
+          FullDeclaration.create(module, doc, data, forceConstruct = false)
+        }
+    }
+  }
+
+  /** Validate summary classes & log diagnostics, those with any invalid dependents are discarded. Validity is
+    * computed once for each class, rejections are then propagated via a worklist so only the classes that depend on
+    * a rejected type are re-checked.
+    */
   private def validateSummaryClasses(summaryClasses: Iterator[SummaryApex]): Unit = {
 
-    val classes       = summaryClasses.toArray
-    val rejected      = mutable.Set[SummaryApex]()
-    val typeCache     = new TypeCache()
-    var hasRejections = true
-    var rejectCycles  = 0
+    val classes   = summaryClasses.toArray
+    val rejected  = mutable.Set[SummaryApex]()
+    val typeCache = new TypeCache()
+    val worklist  = mutable.Queue[SummaryApex]()
+    var rechecks  = 0
 
-    // Collect rejected in a set, we have to multi-pass to make sure all are found
-    while (hasRejections) {
-      val rejects = classes.filterNot(
-        cls => rejected.contains(cls) || cls.declaration.hasValidDependencies(typeCache)
-      )
+    // Tidy up a rejected class so it can't be found and queue it to re-check its dependents
+    def reject(cls: SummaryApex): Unit = {
+      val typeName = cls.declaration.typeName
+      types.remove(typeName)
+      typeCache.remove((typeName, module))
+      rejected.add(cls)
+      worklist.enqueue(cls)
+      LoggerOps.info(s"Cached type $typeName rejected due to invalid dependencies")
+    }
 
-      // Tidy up rejected so they can't be found
-      rejects.foreach(reject => {
-        val typeName = reject.declaration.typeName
-        types.remove(typeName)
-        typeCache.remove((typeName, module))
-        LoggerOps.info(s"Cached type $typeName rejected due to invalid dependencies")
-      })
-      rejected.addAll(rejects)
-      hasRejections = rejects.nonEmpty
-      rejectCycles += 1
+    classes.filterNot(_.declaration.hasValidDependencies(typeCache)).foreach(reject)
+
+    if (worklist.nonEmpty) {
+      // Reverse dependencies of the remaining classes, keyed by the names they depend on
+      val dependents = mutable.HashMap[Name, mutable.ArrayBuffer[SummaryApex]]()
+      classes
+        .filterNot(rejected.contains)
+        .foreach(cls => {
+          val names = mutable.Set[Name]()
+          cls.declaration.collectTypeDependencyNames(names)
+          names.foreach(name => dependents.getOrElseUpdate(name, mutable.ArrayBuffer()).append(cls))
+        })
+
+      while (worklist.nonEmpty) {
+        val rejectedName = worklist.dequeue().declaration.name
+        dependents
+          .getOrElse(rejectedName, Nil)
+          .filterNot(rejected.contains)
+          .foreach(cls => {
+            rechecks += 1
+            if (!cls.declaration.hasValidDependencies(typeCache))
+              reject(cls)
+          })
+      }
+      LoggerOps.info(
+        s"Re-checked $rechecks cached types after ${rejected.size} of ${classes.length} were rejected"
+      )
     }
-    if (rejectCycles > 1)
-      LoggerOps.info(s"Used $rejectCycles rejection cycles")
 
     // For those not rejected, complete processing
     classes
@@ -204,21 +241,26 @@ class StreamDeployer(
   }
 
   /** Load classes from the code cache as types returning TypeNames of those available. Benchmarking has shown
-    * running this in parallel helps performance quite a bit with SSDs.
+    * running this in parallel helps performance quite a bit with SSDs. The module manifest is used to find cache keys
+    * for unchanged files without reading them, any file that may have changed is read & hashed.
     */
   private def loadClassesFromCache(classes: ArraySeq[ApexClassDocument]): Iterator[SummaryApex] = {
     module.pkg.org.parsedCache
       .map(parsedCache => {
 
-        val pkgContext = module.pkg.packageContext
-        val localAccum = new ConcurrentHashMap[TypeName, SummaryApex]()
+        val pkgContext      = module.pkg.packageContext
+        val localAccum      = new ConcurrentHashMap[TypeName, SummaryApex]()
+        val started         = java.lang.System.currentTimeMillis()
+        val manifest        = SourceManifest.load(parsedCache, pkgContext, module.index.path)
+        val manifestEntries = new ConcurrentHashMap[String, ManifestEntry]()
 
         classes.par.foreach(doc => {
-          doc.path
-            .readBytes()
-            .toOption
-            .map(data => {
-              val value = parsedCache.get(pkgContext, doc.name.value, data)
+          manifest
+            .unchanged(doc.path)
+            .orElse(ManifestEntry(doc.path, doc.name.value))
+            .foreach(entry => {
+              manifestEntries.put(doc.path.toString, entry)
+              val value = parsedCache.get(pkgContext, entry.sourceKey)
               val ad    = value.map(v => SummaryApex(doc.path, module, v))
               if (ad.nonEmpty && !ad.get.diagnostics.exists(_.category == MISSING_CATEGORY)) {
                 localAccum.put(ad.get.declaration.typeName, ad.get)
@@ -226,6 +268,10 @@ class StreamDeployer(
             })
         })
 
+        val updatedManifest = SourceManifest(started, manifestEntries.asScala.toMap)
+        if (updatedManifest.entries != manifest.entries)
+          SourceManifest.save(parsedCache, pkgContext, module.index.path, updatedManifest)
+
         localAccum.entrySet.forEach(kv => {
           types.put(kv.getKey, kv.getValue.declaration)
         })
@@ -262,3 +308,20 @@ class StreamDeployer(
     types.put(altTypeName.getOrElse(td.typeName), td)
   }
 }
+
+object StreamDeployer {
+  private var parserPool: Option[ForkJoinTaskSupport] = None
+  private var parserPoolSize: Int                     = 0
+
+  /** Task support for parallel parsing, the pool is recreated if ServerOps.getParserThreads changes. */
+  private def parserTaskSupport: ForkJoinTaskSupport =
+    synchronized {
+      val threads = ServerOps.getParserThreads
+      if (parserPool.isEmpty || parserPoolSize != threads) {
+        parserPool.foreach(_.forkJoinPool.shutdown())
+        parserPool = Some(new ForkJoinTaskSupport(new ForkJoinPool(threads)))
+        parserPoolSize = threads
+      }
+      parserPool.get
+    }
+}
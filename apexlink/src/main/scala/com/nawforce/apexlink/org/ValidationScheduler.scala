@@ -0,0 +1,148 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+
+package com.nawforce.apexlink.org
+
+import com.nawforce.apexlink.api.ServerOps
+import com.nawforce.apexlink.types.apex.ApexClassDeclaration
+import com.nawforce.apexlink.types.core.TypeDeclaration
+
+import java.util
+import java.util.concurrent.atomic.{AtomicInteger, AtomicReference}
+import java.util.concurrent.{CountDownLatch, ForkJoinPool}
+import scala.collection.mutable
+
+/** Scheduler for type validation. When ServerOps.getParallelValidation is enabled independent types are validated
+  * concurrently on a work-stealing pool of ServerOps.getValidationThreads threads, otherwise they are validated in
+  * order on the calling thread.
+  *
+  * A type is only validated after the super class & interfaces it depends on from the same batch have been
+  * validated. Types in an inheritance cycle, and those that depend on them, are validated in order on the calling
+  * thread after the others have completed.
+  */
+object ValidationScheduler {
+
+  private var pool: Option[ForkJoinPool] = None
+  private var poolSize: Int              = 0
+
+  /** Validate the types with the passed operation, exceptions from the operation are re-thrown once all the types
+    * have been handled.
+    */
+  def validate[T <: TypeDeclaration](types: Iterable[T])(op: T => Unit): Unit = {
+    if (ServerOps.getParallelValidation && ServerOps.getValidationThreads > 1 && types.size > 1)
+      new Schedule(types.toIndexedSeq, op, validationPool).run()
+    else
+      types.foreach(op)
+  }
+
+  /** Pool for parallel validation, the pool is recreated if ServerOps.getValidationThreads changes. A replaced pool
+    * is not shutdown as a schedule may still be submitting to it, its workers exit once idle.
+    */
+  private def validationPool: ForkJoinPool =
+    synchronized {
+      val threads = ServerOps.getValidationThreads
+      if (pool.isEmpty || poolSize != threads) {
+        pool = Some(new ForkJoinPool(threads))
+        poolSize = threads
+      }
+      pool.get
+    }
+
+  private final class Schedule[T <: TypeDeclaration](
+    types: IndexedSeq[T],
+    op: T => Unit,
+    pool: ForkJoinPool
+  ) {
+    private val org        = OrgImpl.current.value
+    private val dependents = Array.fill(types.length)(mutable.ArrayBuffer[Int]())
+    private val pending    = Array.fill(types.length)(new AtomicInteger())
+    private val failure    = new AtomicReference[Throwable]()
+    private val scheduled  = new Array[Boolean](types.length)
+
+    buildGraph()
+
+    def run(): Unit = {
+      val roots = types.indices.filter(i => scheduled(i) && pending(i).get() == 0)
+      val latch = new CountDownLatch(scheduled.count(identity))
+      roots.foreach(i => submit(i, latch))
+      latch.await()
+
+      types.indices.filterNot(scheduled).foreach(i => validate(i))
+      Option(failure.get()).foreach(ex => throw ex)
+    }
+
+    private def submit(i: Int, latch: CountDownLatch): Unit = {
+      pool.execute(() => {
+        try {
+          validate(i)
+        } finally {
+          dependents(i).foreach(d => {
+            if (pending(d).decrementAndGet() == 0)
+              submit(d, latch)
+          })
+          latch.countDown()
+        }
+      })
+    }
+
+    private def validate(i: Int): Unit = {
+      try {
+        OrgImpl.current.withValue(org) {
+          op(types(i))
+        }
+      } catch {
+        case ex: Throwable => failure.compareAndSet(null, ex)
+      }
+    }
+
+    /* Add edges from super classes & interfaces to the types that depend on them and mark which types can be
+     * scheduled, those not reached by a topological sort are part of or depend on an inheritance cycle. */
+    private def buildGraph(): Unit = {
+      val owners = new util.IdentityHashMap[TypeDeclaration, Integer]()
+      types.indices.foreach(i => {
+        withNested(types(i)).foreach(td => owners.put(td, i))
+      })
+
+      types.indices.foreach(i => {
+        val supers = withNested(types(i))
+          .flatMap(td => td.superClassDeclaration ++ td.interfaceDeclarations)
+          .flatMap(td => Option(owners.get(td)).map(_.intValue()))
+          .filterNot(_ == i)
+          .distinct
+        supers.foreach(s => dependents(s).append(i))
+        pending(i).set(supers.length)
+      })
+
+      val remaining = pending.map(_.get())
+      val ready     = mutable.Queue[Int]()
+      ready.enqueueAll(types.indices.filter(i => remaining(i) == 0))
+      while (ready.nonEmpty) {
+        val i = ready.dequeue()
+        scheduled(i) = true
+        dependents(i).foreach(d => {
+          remaining(d) -= 1
+          if (remaining(d) == 0)
+            ready.enqueue(d)
+        })
+      }
+    }
+
+    private def withNested(td: TypeDeclaration): Seq[TypeDeclaration] = {
+      td match {
+        case ad: ApexClassDeclaration => ad +: ad.nestedTypes.flatMap(withNested)
+        case _                        => Seq(td)
+      }
+    }
+  }
+}
@@ -30,7 +30,7 @@ class PluginsManager {
   /** Create a new plugin dispatcher for a DependentType. */
   def createPlugin(td: DependentType): Plugin = {
     val plugin = PluginDispatcher(td, availablePlugins)
-    livePlugins.put(td, Some(plugin))
+    livePlugins.synchronized { livePlugins.put(td, Some(plugin)) }
     plugin
   }
 
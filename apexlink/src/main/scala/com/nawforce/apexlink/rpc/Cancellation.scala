@@ -0,0 +1,51 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+
+package com.nawforce.apexlink.rpc
+
+import java.util.concurrent.CancellationException
+
+/** Cancellation flag for a request, set when the request is cancelled or superseded. */
+final class CancellationToken {
+  @volatile private var cancelled = false
+
+  def cancel(): Unit = cancelled = true
+
+  def isCancelled: Boolean = cancelled
+}
+
+/** Cooperative cancellation for long running operations. The thread processing a request holds its token, long
+  * running operations call check() at convenient points so they can be abandoned once the result is not needed.
+  */
+object Cancellation {
+  private val current = new ThreadLocal[CancellationToken]()
+
+  /** Run an operation with a token in scope for check(). */
+  def withToken[T](token: CancellationToken)(op: => T): T = {
+    val prior = current.get()
+    current.set(token)
+    try {
+      op
+    } finally {
+      current.set(prior)
+    }
+  }
+
+  /** Throw a CancellationException if the in-scope token has been cancelled. */
+  def check(): Unit = {
+    val token = current.get()
+    if (token != null && token.isCancelled)
+      throw new CancellationException("Request cancelled")
+  }
+}
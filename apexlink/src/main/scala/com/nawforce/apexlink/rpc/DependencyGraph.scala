@@ -28,6 +28,25 @@ object DependencyGraph {
   implicit val rwName: RW[Name]                     = macroRW
 }
 
+/** Page of a dependency graph, see PageRequest. Pages hold consecutive nodes along with the links from those nodes,
+  * link indexes refer to the position of nodes across all pages.
+  */
+case class DependencyGraphPage(
+  error: Option[APIError],
+  nodeData: Array[DependencyNode],
+  linkData: Array[DependencyLink],
+  cursor: Option[Int]
+)
+
+object DependencyGraphPage {
+  implicit val rw: RW[DependencyGraphPage]          = macroRW
+  implicit val rwNode: RW[DependencyNode]           = macroRW
+  implicit val rwLink: RW[DependencyLink]           = macroRW
+  implicit val rwTypeIdentifier: RW[TypeIdentifier] = macroRW
+  implicit val rwTypeName: RW[TypeName]             = macroRW
+  implicit val rwName: RW[Name]                     = macroRW
+}
+
 /** Node of a dependency graph, represents some kind of type declaration. */
 case class DependencyNode(
   identifier: TypeIdentifier,
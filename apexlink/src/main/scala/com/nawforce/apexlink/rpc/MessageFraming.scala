@@ -0,0 +1,160 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+
+package com.nawforce.apexlink.rpc
+
+import java.nio.ByteBuffer
+import java.nio.channels.{ReadableByteChannel, WritableByteChannel}
+import java.nio.charset.{CoderResult, StandardCharsets}
+import java.nio.CharBuffer
+import scala.collection.mutable
+
+/** Pool of direct buffers of a fixed size, buffers are cleared on release. */
+final class BufferPool(val bufferSize: Int, maxPooled: Int = BufferPool.MAX_POOLED) {
+  private val pooled = mutable.Stack[ByteBuffer]()
+
+  def acquire(): ByteBuffer =
+    synchronized {
+      if (pooled.nonEmpty) pooled.pop() else ByteBuffer.allocateDirect(bufferSize)
+    }
+
+  def release(buffer: ByteBuffer): Unit =
+    synchronized {
+      if (pooled.size < maxPooled) {
+        buffer.clear()
+        pooled.push(buffer)
+      }
+    }
+}
+
+object BufferPool {
+
+  /** Maximum number of idle buffers retained */
+  final val MAX_POOLED: Int = 16
+}
+
+/** Reader for NUL terminated UTF-8 messages. Data is read into pooled direct buffers and scanned for terminators in
+  * place, so a message is only copied once, when it is decoded. Messages larger than a buffer span multiple buffers
+  * which are returned to the pool after decoding. UTF-8 never uses a zero byte within a multi-byte sequence so it is
+  * safe to scan for terminators before decoding.
+  */
+final class MessageReader(channel: ReadableByteChannel, pool: BufferPool) {
+
+  def this(channel: ReadableByteChannel) = this(channel, new BufferPool(MessageReader.BUFFER_SIZE))
+
+  // Full buffers holding the start of the current message, in read mode
+  private val parts        = mutable.ArrayBuffer[ByteBuffer]()
+  private var current      = pool.acquire()
+  private var messageStart = 0
+  private var scanFrom     = 0
+
+  /** Read the next message, returns None if the channel reaches end of stream. */
+  def next(): Option[String] = {
+    while (true) {
+      val end = current.position()
+      var i   = scanFrom
+      while (i < end && current.get(i) != 0) i += 1
+
+      if (i < end) {
+        val message = decode(messageStart, i)
+        messageStart = i + 1
+        scanFrom = messageStart
+        return Some(message)
+      }
+      scanFrom = end
+
+      if (messageStart == end && parts.isEmpty) {
+        // Everything consumed, reuse the buffer from the start
+        current.clear()
+        messageStart = 0
+        scanFrom = 0
+      } else if (!current.hasRemaining) {
+        // Park the start of the message and continue in a new buffer
+        current.limit(end).position(messageStart)
+        parts.append(current)
+        current = pool.acquire()
+        messageStart = 0
+        scanFrom = 0
+      }
+
+      if (channel.read(current) == -1)
+        return None
+    }
+    None
+  }
+
+  private def decode(from: Int, to: Int): String = {
+    val tail = current.duplicate()
+    tail.limit(to).position(from)
+    if (parts.isEmpty) {
+      StandardCharsets.UTF_8.decode(tail).toString
+    } else {
+      val bytes  = new Array[Byte](parts.map(_.remaining()).sum + tail.remaining())
+      var offset = 0
+      (parts :+ tail).foreach(part => {
+        val length = part.remaining()
+        part.get(bytes, offset, length)
+        offset += length
+      })
+      parts.foreach(pool.release)
+      parts.clear()
+      new String(bytes, StandardCharsets.UTF_8)
+    }
+  }
+}
+
+object MessageReader {
+
+  /** Size of buffers used for reading */
+  final val BUFFER_SIZE: Int = 64 * 1024
+}
+
+/** Writer for NUL terminated UTF-8 messages. Messages are encoded directly into a direct buffer which is written to
+  * the channel as it fills, so large messages are not materialised as byte arrays. Writes are serialised.
+  */
+final class MessageWriter(
+  channel: WritableByteChannel,
+  bufferSize: Int = MessageReader.BUFFER_SIZE
+) {
+  private val buffer  = ByteBuffer.allocateDirect(bufferSize)
+  private val encoder = StandardCharsets.UTF_8.newEncoder()
+
+  def write(message: String): Unit =
+    synchronized {
+      val chars = CharBuffer.wrap(message)
+      encoder.reset()
+      encode(() => encoder.encode(chars, buffer, true))
+      encode(() => encoder.flush(buffer))
+      if (!buffer.hasRemaining)
+        flushBuffer()
+      buffer.put(0.toByte)
+      flushBuffer()
+    }
+
+  private def encode(op: () => CoderResult): Unit = {
+    var result = op()
+    while (result.isOverflow) {
+      flushBuffer()
+      result = op()
+    }
+    if (result.isError)
+      result.throwException()
+  }
+
+  private def flushBuffer(): Unit = {
+    buffer.flip()
+    while (buffer.hasRemaining) channel.write(buffer)
+    buffer.clear()
+  }
+}
@@ -14,6 +14,7 @@
 
 package com.nawforce.apexlink.rpc
 
+import com.nawforce.apexlink.org.IssuesDelta
 import com.nawforce.pkgforce.diagnostics._
 import com.nawforce.pkgforce.names.{Name, TypeIdentifier, TypeName}
 import com.nawforce.pkgforce.path.{Location, PathLike, PathLocation}
@@ -56,6 +57,28 @@ object GetIssuesResult {
     JSONRPCPickler.readwriter[String].bimap[PathLike](_.toString, Path(_))
 }
 
+/** Request for a page of a large result. The first page is requested without a cursor, later pages using the
+  * cursor returned with the previous page. Parameters other than the cursor are ignored for later pages. A cursor is
+  * rejected if the org has changed since the first page was returned.
+  */
+case class PageRequest(pageSize: Int, cursor: Option[Int])
+
+object PageRequest {
+  implicit val rw: RW[PageRequest] = macroRW
+}
+
+case class GetIssuesPage(error: Option[APIError], issues: Array[Issue], cursor: Option[Int])
+
+object GetIssuesPage {
+  implicit val rw: RW[GetIssuesPage]                                = macroRW
+  implicit val rwIssue: RW[com.nawforce.pkgforce.diagnostics.Issue] = macroRW
+  implicit val rwDiagnostic: RW[Diagnostic]                         = macroRW
+  implicit val rwDiagnosticCategory: RW[DiagnosticCategory]         = macroRW
+  implicit val rwLocation: RW[Location]                             = macroRW
+  implicit val rwPathLike: RW[PathLike] =
+    JSONRPCPickler.readwriter[String].bimap[PathLike](_.toString, Path(_))
+}
+
 case class IssuesResult(issues: Array[Issue])
 
 object IssuesResult {
@@ -68,6 +91,33 @@ object IssuesResult {
     JSONRPCPickler.readwriter[String].bimap[PathLike](_.toString, Path(_))
 }
 
+case class FileIssuesDelta(path: String, added: Array[Issue], removed: Array[Issue])
+
+object FileIssuesDelta {
+  implicit val rw: RW[FileIssuesDelta]                              = macroRW
+  implicit val rwIssue: RW[com.nawforce.pkgforce.diagnostics.Issue] = macroRW
+  implicit val rwDiagnostic: RW[Diagnostic]                         = macroRW
+  implicit val rwDiagnosticCategory: RW[DiagnosticCategory]         = macroRW
+  implicit val rwLocation: RW[Location]                             = macroRW
+  implicit val rwPathLike: RW[PathLike] =
+    JSONRPCPickler.readwriter[String].bimap[PathLike](_.toString, Path(_))
+
+  def apply(delta: IssuesDelta): FileIssuesDelta = {
+    FileIssuesDelta(delta.path.toString, delta.added.toArray, delta.removed.toArray)
+  }
+}
+
+/** Notification of changed issues, sent after refreshes once enabled with setIssueNotifications. The version
+  * increases by one with each notification so clients can detect any they have missed.
+  */
+case class IssuesChanged(version: Int, files: Array[FileIssuesDelta])
+
+object IssuesChanged {
+  final val METHOD: String = "issuesChanged"
+
+  implicit val rw: RW[IssuesChanged] = macroRW
+}
+
 case class GetTypeIdentifiersResult(identifiers: Array[TypeIdentifier])
 
 object GetTypeIdentifiersResult {
@@ -77,6 +127,19 @@ object GetTypeIdentifiersResult {
   implicit val rwName: RW[Name]                     = macroRW
 }
 
+case class GetTypeIdentifiersPage(
+  error: Option[APIError],
+  identifiers: Array[TypeIdentifier],
+  cursor: Option[Int]
+)
+
+object GetTypeIdentifiersPage {
+  implicit val rw: RW[GetTypeIdentifiersPage]       = macroRW
+  implicit val rwTypeIdentifier: RW[TypeIdentifier] = macroRW
+  implicit val rwTypeName: RW[TypeName]             = macroRW
+  implicit val rwName: RW[Name]                     = macroRW
+}
+
 case class IdentifierLocationResult(pathLocation: PathLocation)
 
 object IdentifierLocationResult {
@@ -159,6 +222,16 @@ object TestMethod {
   implicit val rw: RW[TestMethod] = macroRW
 }
 
+case class GetAllTestMethodsPage(
+  error: Option[APIError],
+  testMethods: Array[TestMethod],
+  cursor: Option[Int]
+)
+
+object GetAllTestMethodsPage {
+  implicit val rw: RW[GetAllTestMethodsPage] = macroRW
+}
+
 trait OrgAPI {
   @api.JSONRPCMethod(name = "version")
   def version(): Future[String]
@@ -169,12 +242,25 @@ trait OrgAPI {
   @api.JSONRPCMethod(name = "setCacheDirectory")
   def setCacheDirectory(path: Option[String]): Future[Unit]
 
+  @api.JSONRPCMethod(name = "setFileWatching")
+  def setFileWatching(enabled: Boolean): Future[Unit]
+
+  @api.JSONRPCMethod(name = "setIssueNotifications")
+  def setIssueNotifications(enabled: Boolean): Future[Unit]
+
   @api.JSONRPCMethod(name = "open")
   def open(directory: String): Future[OpenResult]
 
   @api.JSONRPCMethod(name = "getIssues")
   def getIssues(includeWarnings: Boolean, maxIssuesPerFile: Int): Future[GetIssuesResult]
 
+  @api.JSONRPCMethod(name = "getIssuesPage")
+  def getIssuesPage(
+    includeWarnings: Boolean,
+    maxIssuesPerFile: Int,
+    page: PageRequest
+  ): Future[GetIssuesPage]
+
   @api.JSONRPCMethod(name = "hasUpdatedIssues")
   def hasUpdatedIssues: Future[Array[String]]
 
@@ -197,6 +283,9 @@ trait OrgAPI {
   @api.JSONRPCMethod(name = "getTypeIdentifiers")
   def typeIdentifiers(apexOnly: Boolean): Future[GetTypeIdentifiersResult]
 
+  @api.JSONRPCMethod(name = "getTypeIdentifiersPage")
+  def typeIdentifiersPage(apexOnly: Boolean, page: PageRequest): Future[GetTypeIdentifiersPage]
+
   @api.JSONRPCMethod(name = "dependencyGraph")
   def dependencyGraph(
     identifiers: IdentifiersRequest,
@@ -205,6 +294,15 @@ trait OrgAPI {
     ignoring: IdentifiersRequest
   ): Future[DependencyGraph]
 
+  @api.JSONRPCMethod(name = "dependencyGraphPage")
+  def dependencyGraphPage(
+    identifiers: IdentifiersRequest,
+    depth: Int,
+    apexOnly: Boolean,
+    ignoring: IdentifiersRequest,
+    page: PageRequest
+  ): Future[DependencyGraphPage]
+
   @api.JSONRPCMethod(name = "identifierLocation")
   def identifierLocation(identifier: IdentifierRequest): Future[IdentifierLocationResult]
 
@@ -238,6 +336,9 @@ trait OrgAPI {
 
   @api.JSONRPCMethod(name = "getAllTestMethods")
   def getAllTestMethods(): Future[Array[TestMethod]]
+
+  @api.JSONRPCMethod(name = "getAllTestMethodsPage")
+  def getAllTestMethodsPage(page: PageRequest): Future[GetAllTestMethodsPage]
 }
 
 object OrgAPI {
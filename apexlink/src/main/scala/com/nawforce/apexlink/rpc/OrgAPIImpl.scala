@@ -15,44 +15,287 @@
 package com.nawforce.apexlink.rpc
 
 import com.nawforce.apexlink.api.{Org, ServerOps}
-import com.nawforce.apexlink.org.OrgImpl
+import com.nawforce.apexlink.org.{IssuesDelta, OrgImpl}
 import com.nawforce.pkgforce.diagnostics.LoggerOps
 import com.nawforce.pkgforce.names.TypeIdentifier
 import com.nawforce.runtime.platform.{Environment, Path}
+import io.github.shogowada.scala.jsonrpc.serializers.JSONRPCPickler
 
-import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent._
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.ReentrantLock
+import scala.collection.mutable
 import scala.concurrent.ExecutionContext.Implicits.global
 import scala.concurrent.{Future, Promise}
+import scala.util.DynamicVariable
+
+/** Lanes used to order read-only requests waiting to run, interactive requests are run ahead of bulk requests. */
+sealed abstract class RequestLane(val priority: Int)
+case object InteractiveLane extends RequestLane(0)
+case object BulkLane        extends RequestLane(1)
 
 trait APIRequest {
+
+  /** Promise for the request result, failed with a CancellationException if the request is cancelled */
+  val promise: Promise[_]
+
+  /** Token for cancelling the request, see Cancellation */
+  val cancellation: CancellationToken = new CancellationToken()
+
   def process(org: OrgQueue): Unit
+
+  /** Should pending refreshes be processed immediately rather than waiting for them to settle */
+  def flushNow: Boolean = false
+
+  /** Can the request be answered from the last published snapshot without waiting for pending refreshes */
+  def readOnly: Boolean = false
+
+  /** Lane for ordering read-only requests */
+  def lane: RequestLane = BulkLane
+
+  /** Does this request make an earlier unfinished request redundant, e.g. a newer completion for the same file */
+  def supersedes(other: APIRequest): Boolean = false
 }
 
+/** Queue of requests against an Org. Requests are dispatched in order, read-only requests run concurrently on a pool
+  * against the last published snapshot while others are run on the dispatcher thread once any in-flight read-only
+  * requests have completed, so they are always processed exclusively & in order. Read-only requests waiting for a
+  * pool thread are ordered by lane.
+  *
+  * Requests may be cancelled by id or superseded by a later request. Cancelled requests are dropped if they have not
+  * started, running requests are abandoned at the next Cancellation.check(). Closing the queue cancels all unfinished
+  * requests, stops the dispatcher and fails any requests added later.
+  */
 class OrgQueue(path: String) { self =>
   val org: Org = Org.newOrg(path)
 
-  private val queue      = new LinkedBlockingQueue[APIRequest]()
+  private val queue = new LinkedBlockingQueue[APIRequest]()
+  private val readers = new ThreadPoolExecutor(
+    OrgQueue.READER_THREADS,
+    OrgQueue.READER_THREADS,
+    0,
+    TimeUnit.MILLISECONDS,
+    new PriorityBlockingQueue[Runnable](),
+    OrgQueue.readerFactory
+  )
+  private val lock       = new ReentrantLock()
+  private val readsDone  = lock.newCondition()
+  private var reading    = 0
+  private val sequence   = new AtomicLong()
+  private val active     = ConcurrentHashMap.newKeySet[APIRequest]()
+  private val byId       = new ConcurrentHashMap[String, APIRequest]()
   private val dispatcher = new APIRequestDispatcher()
-  new Thread(dispatcher).start()
+  private var closed     = false
+
+  /** Cursors for paged results */
+  val cursors = new ResultCursors()
+
+  /** Thread running the dispatcher, exits once the queue is closed */
+  private[rpc] val dispatcherThread = new Thread(dispatcher)
+
+  setIssueNotifications(OrgQueue.issueNotifications)
+  dispatcherThread.setName("apex-link request dispatcher")
+  dispatcherThread.start()
+
+  /** Read-only request waiting for a pool thread, ordered by lane and then arrival. */
+  private class ReadTask(val request: APIRequest, val sequence: Long)
+      extends Runnable
+      with Comparable[ReadTask] {
+    val priority: Int = request.lane.priority
+
+    override def run(): Unit = {
+      try {
+        org.asInstanceOf[OrgImpl].withSnapshot(execute(request))
+      } finally {
+        endRead()
+      }
+    }
+
+    override def compareTo(other: ReadTask): Int = {
+      val byLane = Integer.compare(priority, other.priority)
+      if (byLane != 0) byLane else java.lang.Long.compare(sequence, other.sequence)
+    }
+  }
 
   class APIRequestDispatcher() extends Runnable {
 
     override def run(): Unit = {
-      while (true) {
+      var running = true
+      while (running) {
         val request = queue.take()
+        val orgImpl = org.asInstanceOf[OrgImpl]
+
+        if (request eq OrgQueue.Stop) {
+          running = false
+        } else if (request.readOnly) {
+          startRead()
+          try {
+            readers.execute(new ReadTask(request, sequence.incrementAndGet()))
+          } catch {
+            case _: RejectedExecutionException =>
+              // Closed since the request was taken
+              endRead()
+              abandon(request)
+          }
+        } else {
+          awaitReads()
+          if (org.isDirty()) {
+            if (request.flushNow) orgImpl.flushNow() else orgImpl.awaitFlushed()
+          }
+          execute(request)
+        }
+      }
+    }
+  }
 
-        while (org.isDirty()) Thread.sleep(50)
+  /** Queue a request, this cancels any unfinished requests it supersedes. The request may be cancelled via the
+    * JSON-RPC id in OrgQueue.requestId when queued. Requests added within OrgQueue.batched are held back to be
+    * queued together as a single BatchRequest.
+    */
+  def add(request: APIRequest): Unit = {
+    active.forEach(other => if (request.supersedes(other)) other.cancellation.cancel())
+    active.add(request)
+    OrgQueue.requestId.value.foreach(id => byId.put(id, request))
+    OrgQueue.batch.value match {
+      case Some(batch) => batch.append((this, request))
+      case None        => enqueue(request)
+    }
+  }
 
-        request.process(self)
-      }
+  /* Queue a request for the dispatcher, it is abandoned if the queue has been closed */
+  private def enqueue(request: APIRequest): Unit = {
+    val accepted = synchronized {
+      if (!closed)
+        queue.add(request)
+      !closed
     }
+    if (!accepted)
+      abandon(request)
   }
 
-  def add(request: APIRequest): Unit =
-    queue.add(request)
+  /** Cancel an unfinished request by its JSON-RPC id. */
+  def cancel(id: String): Unit = {
+    Option(byId.get(id)).foreach(_.cancellation.cancel())
+  }
 
   def refresh(path: String): Unit =
     Option(org.getPackageForPath(path)).foreach(_.refresh(path))
+
+  /** Enable or disable pushing issue deltas to the client, see OrgQueue.setIssueNotifications */
+  private[rpc] def setIssueNotifications(enabled: Boolean): Unit = {
+    org
+      .asInstanceOf[OrgImpl]
+      .issues
+      .setDeltaListener(if (enabled) Some(OrgQueue.notifyIssues) else None)
+  }
+
+  /** Close the org & stop the dispatcher. Requests that have not started are failed, running requests are cancelled
+    * and requests added later fail immediately.
+    */
+  def close(): Unit = {
+    val pending = new java.util.ArrayList[APIRequest]()
+    val closing = synchronized {
+      val wasOpen = !closed
+      if (wasOpen) {
+        closed = true
+        queue.drainTo(pending)
+        queue.add(OrgQueue.Stop)
+      }
+      wasOpen
+    }
+
+    if (closing) {
+      active.forEach(_.cancellation.cancel())
+      readers
+        .shutdownNow()
+        .forEach(task => {
+          endRead()
+          abandon(task.asInstanceOf[ReadTask].request)
+        })
+      pending.forEach(request => abandon(request))
+      org.asInstanceOf[OrgImpl].close()
+    }
+  }
+
+  /* Fail a request that will not be run, including each request of a batch */
+  private def abandon(request: APIRequest): Unit = {
+    request match {
+      case batch: BatchRequest =>
+        batch.requests.foreach(abandon)
+        batch.promise.tryFailure(new CancellationException("Request cancelled"))
+      case _ =>
+        request.cancellation.cancel()
+        execute(request)
+    }
+  }
+
+  private[rpc] def execute(request: APIRequest): Unit = {
+    try {
+      if (request.cancellation.isCancelled)
+        request.promise.tryFailure(new CancellationException("Request cancelled"))
+      else
+        Cancellation.withToken(request.cancellation) {
+          request.process(self)
+        }
+    } catch {
+      case ex: CancellationException => request.promise.tryFailure(ex)
+      case ex: Throwable             =>
+        // Fail just this request so the queue, and any batch it is part of, can continue
+        LoggerOps.info(s"Request ${request.getClass.getSimpleName} failed", ex)
+        request.promise.tryFailure(ex)
+    } finally {
+      active.remove(request)
+      byId.values().remove(request)
+    }
+  }
+
+  private def startRead(): Unit = {
+    lock.lock()
+    try {
+      reading += 1
+    } finally {
+      lock.unlock()
+    }
+  }
+
+  private def endRead(): Unit = {
+    lock.lock()
+    try {
+      reading -= 1
+      if (reading == 0)
+        readsDone.signalAll()
+    } finally {
+      lock.unlock()
+    }
+  }
+
+  private def awaitReads(): Unit = {
+    lock.lock()
+    try {
+      while (reading > 0) readsDone.await()
+    } finally {
+      lock.unlock()
+    }
+  }
+}
+
+/** Requests received together in a JSON-RPC batch, processed in order as a single job. The batch is only run as
+  * read-only if all of its requests are, otherwise they are all run exclusively.
+  */
+class BatchRequest(val requests: Seq[APIRequest]) extends APIRequest {
+  val promise: Promise[Unit] = Promise[Unit]()
+
+  override def flushNow: Boolean = requests.exists(_.flushNow)
+
+  override def readOnly: Boolean = requests.forall(_.readOnly)
+
+  override def lane: RequestLane = requests.map(_.lane).minBy(_.priority)
+
+  // Each request completes its own promise, a failure in one does not stop those that follow
+  override def process(queue: OrgQueue): Unit = {
+    requests.foreach(queue.execute)
+    promise.success(())
+  }
 }
 
 case class OpenRequest(promise: Promise[OpenResult]) extends APIRequest {
@@ -80,6 +323,8 @@ case class GetIssues(
   includeWarnings: Boolean,
   maxIssuesPerFile: Int
 ) extends APIRequest {
+  override def flushNow: Boolean = true
+
   override def process(queue: OrgQueue): Unit = {
 
     val orgImpl = queue.org.asInstanceOf[OrgImpl]
@@ -107,7 +352,47 @@ object GetIssues {
   }
 }
 
+case class GetIssuesPaged(
+  promise: Promise[GetIssuesPage],
+  includeWarnings: Boolean,
+  maxIssuesPerFile: Int,
+  page: PageRequest
+) extends APIRequest {
+  override def flushNow: Boolean = true
+
+  override def process(queue: OrgQueue): Unit = {
+    val orgImpl = queue.org.asInstanceOf[OrgImpl]
+    OrgImpl.current.withValue(orgImpl) {
+      promise.success(
+        queue.cursors
+          .page(page, orgImpl.publishedVersion) {
+            orgImpl.issueManager.issuesIterator(includeWarnings, maxIssuesPerFile)
+          }
+          .fold(
+            err => GetIssuesPage(Some(APIError(err)), Array(), None),
+            issues => GetIssuesPage(None, issues._1, issues._2)
+          )
+      )
+    }
+  }
+}
+
+object GetIssuesPaged {
+  def apply(
+    queue: OrgQueue,
+    includeWarnings: Boolean,
+    maxIssuesPerFile: Int,
+    page: PageRequest
+  ): Future[GetIssuesPage] = {
+    val promise = Promise[GetIssuesPage]()
+    queue.add(new GetIssuesPaged(promise, includeWarnings, maxIssuesPerFile, page))
+    promise.future
+  }
+}
+
 case class HasUpdatedIssues(promise: Promise[Array[String]]) extends APIRequest {
+  override def flushNow: Boolean = true
+
   override def process(queue: OrgQueue): Unit = {
     val orgImpl = queue.org.asInstanceOf[OrgImpl]
     OrgImpl.current.withValue(orgImpl) {
@@ -142,6 +427,10 @@ object IgnoreUpdatedIssues {
 }
 
 case class IssuesForFile(promise: Promise[IssuesResult], path: String) extends APIRequest {
+  override def readOnly: Boolean = true
+
+  override def lane: RequestLane = InteractiveLane
+
   override def process(queue: OrgQueue): Unit = {
     val orgImpl = queue.org.asInstanceOf[OrgImpl]
     OrgImpl.current.withValue(orgImpl) {
@@ -164,6 +453,8 @@ case class IssuesForFiles(
   includeWarnings: Boolean,
   maxErrorsPerFile: Int
 ) extends APIRequest {
+  override def flushNow: Boolean = true
+
   override def process(queue: OrgQueue): Unit = {
     val orgImpl = queue.org.asInstanceOf[OrgImpl]
     OrgImpl.current.withValue(orgImpl) {
@@ -193,6 +484,8 @@ object IssuesForFiles {
 
 case class TypeIdentifiers(promise: Promise[GetTypeIdentifiersResult], apexOnly: Boolean)
     extends APIRequest {
+  override def readOnly: Boolean = true
+
   override def process(queue: OrgQueue): Unit = {
     val orgImpl = queue.org.asInstanceOf[OrgImpl]
     OrgImpl.current.withValue(orgImpl) {
@@ -209,6 +502,42 @@ object TypeIdentifiers {
   }
 }
 
+case class TypeIdentifiersPaged(
+  promise: Promise[GetTypeIdentifiersPage],
+  apexOnly: Boolean,
+  page: PageRequest
+) extends APIRequest {
+  override def readOnly: Boolean = true
+
+  override def process(queue: OrgQueue): Unit = {
+    val orgImpl = queue.org.asInstanceOf[OrgImpl]
+    OrgImpl.current.withValue(orgImpl) {
+      promise.success(
+        queue.cursors
+          .page(page, orgImpl.publishedVersion) {
+            orgImpl.getTypeIdentifiers(apexOnly).iterator
+          }
+          .fold(
+            err => GetTypeIdentifiersPage(Some(APIError(err)), Array(), None),
+            identifiers => GetTypeIdentifiersPage(None, identifiers._1, identifiers._2)
+          )
+      )
+    }
+  }
+}
+
+object TypeIdentifiersPaged {
+  def apply(
+    queue: OrgQueue,
+    apexOnly: Boolean,
+    page: PageRequest
+  ): Future[GetTypeIdentifiersPage] = {
+    val promise = Promise[GetTypeIdentifiersPage]()
+    queue.add(new TypeIdentifiersPaged(promise, apexOnly, page))
+    promise.future
+  }
+}
+
 case class DependencyGraphRequest(
   promise: Promise[DependencyGraph],
   identifiers: Array[TypeIdentifier],
@@ -216,6 +545,8 @@ case class DependencyGraphRequest(
   apexOnly: Boolean,
   ignoring: Array[TypeIdentifier]
 ) extends APIRequest {
+  override def readOnly: Boolean = true
+
   override def process(queue: OrgQueue): Unit = {
     promise.success(queue.org.getDependencyGraph(identifiers, depth, apexOnly, ignoring))
   }
@@ -235,10 +566,58 @@ object DependencyGraphRequest {
   }
 }
 
+case class DependencyGraphPaged(
+  promise: Promise[DependencyGraphPage],
+  identifiers: Array[TypeIdentifier],
+  depth: Int,
+  apexOnly: Boolean,
+  ignoring: Array[TypeIdentifier],
+  page: PageRequest
+) extends APIRequest {
+  override def readOnly: Boolean = true
+
+  override def process(queue: OrgQueue): Unit = {
+    val orgImpl = queue.org.asInstanceOf[OrgImpl]
+    promise.success(
+      queue.cursors
+        .page(page, orgImpl.publishedVersion) {
+          // Pair nodes with their outgoing links so links can be paged with their source node
+          val graph = queue.org.getDependencyGraph(identifiers, depth, apexOnly, ignoring)
+          val links = graph.linkData.groupBy(_.source)
+          graph.nodeData.iterator.zipWithIndex
+            .map(node => (node._1, links.getOrElse(node._2, Array[DependencyLink]())))
+        }
+        .fold(
+          err => DependencyGraphPage(Some(APIError(err)), Array(), Array(), None),
+          nodes => DependencyGraphPage(None, nodes._1.map(_._1), nodes._1.flatMap(_._2), nodes._2)
+        )
+    )
+  }
+}
+
+object DependencyGraphPaged {
+  def apply(
+    queue: OrgQueue,
+    identifiers: Array[TypeIdentifier],
+    depth: Int,
+    apexOnly: Boolean,
+    ignoring: Array[TypeIdentifier],
+    page: PageRequest
+  ): Future[DependencyGraphPage] = {
+    val promise = Promise[DependencyGraphPage]()
+    queue.add(new DependencyGraphPaged(promise, identifiers, depth, apexOnly, ignoring, page))
+    promise.future
+  }
+}
+
 case class IdentifierLocation(
   promise: Promise[IdentifierLocationResult],
   identifier: TypeIdentifier
 ) extends APIRequest {
+  override def readOnly: Boolean = true
+
+  override def lane: RequestLane = InteractiveLane
+
   override def process(queue: OrgQueue): Unit = {
     promise.success(IdentifierLocationResult(queue.org.getIdentifierLocation(identifier)))
   }
@@ -254,6 +633,10 @@ object IdentifierLocation {
 
 case class IdentifierForPath(promise: Promise[IdentifierForPathResult], path: String)
     extends APIRequest {
+  override def readOnly: Boolean = true
+
+  override def lane: RequestLane = InteractiveLane
+
   override def process(queue: OrgQueue): Unit = {
     val orgImpl = queue.org.asInstanceOf[OrgImpl]
     OrgImpl.current.withValue(orgImpl) {
@@ -278,6 +661,17 @@ case class GetDefinition(
   offset: Int,
   content: Option[String]
 ) extends APIRequest {
+  override def readOnly: Boolean = true
+
+  override def lane: RequestLane = InteractiveLane
+
+  override def supersedes(other: APIRequest): Boolean = {
+    other match {
+      case other: GetDefinition => other.path == path
+      case _                    => false
+    }
+  }
+
   override def process(queue: OrgQueue): Unit = {
     val orgImpl = queue.org.asInstanceOf[OrgImpl]
     promise.success(orgImpl.getDefinition(path, line, offset, content.orNull))
@@ -299,6 +693,8 @@ object GetDefinition {
 }
 
 case class GetDependencyBombs(promise: Promise[Array[BombScore]], count: Int) extends APIRequest {
+  override def readOnly: Boolean = true
+
   override def process(queue: OrgQueue): Unit = {
     val orgImpl = queue.org.asInstanceOf[OrgImpl]
     OrgImpl.current.withValue(orgImpl) {
@@ -320,6 +716,8 @@ case class GetTestClassNames(
   paths: Array[String],
   findTests: Boolean
 ) extends APIRequest {
+  override def readOnly: Boolean = true
+
   override def process(queue: OrgQueue): Unit = {
     val orgImpl = queue.org.asInstanceOf[OrgImpl]
     OrgImpl.current.withValue(orgImpl) {
@@ -344,6 +742,8 @@ case class GetDependencyCounts(
   promise: Promise[GetDependencyCountsResult],
   request: GetDependencyCountsRequest
 ) extends APIRequest {
+  override def readOnly: Boolean = true
+
   override def process(queue: OrgQueue): Unit = {
     val orgImpl = queue.org.asInstanceOf[OrgImpl]
     OrgImpl.current.withValue(orgImpl) {
@@ -376,6 +776,17 @@ case class GetCompletionItems(
   offset: Int,
   content: String
 ) extends APIRequest {
+  override def readOnly: Boolean = true
+
+  override def lane: RequestLane = InteractiveLane
+
+  override def supersedes(other: APIRequest): Boolean = {
+    other match {
+      case other: GetCompletionItems => other.path == path
+      case _                         => false
+    }
+  }
+
   override def process(queue: OrgQueue): Unit = {
     val orgImpl = queue.org.asInstanceOf[OrgImpl]
     promise.success(orgImpl.getCompletionItems(path, line, offset, content))
@@ -397,6 +808,8 @@ object GetCompletionItems {
 }
 
 case class GetAllTestMethods(promise: Promise[Array[TestMethod]]) extends APIRequest {
+  override def readOnly: Boolean = true
+
   override def process(queue: OrgQueue): Unit = {
     val orgImpl = queue.org.asInstanceOf[OrgImpl]
     promise.success(orgImpl.getAllTestMethods)
@@ -411,16 +824,128 @@ object GetAllTestMethods {
   }
 }
 
+case class GetAllTestMethodsPaged(promise: Promise[GetAllTestMethodsPage], page: PageRequest)
+    extends APIRequest {
+  override def readOnly: Boolean = true
+
+  override def process(queue: OrgQueue): Unit = {
+    val orgImpl = queue.org.asInstanceOf[OrgImpl]
+    promise.success(
+      queue.cursors
+        .page(page, orgImpl.publishedVersion) {
+          orgImpl.getAllTestMethods.iterator
+        }
+        .fold(
+          err => GetAllTestMethodsPage(Some(APIError(err)), Array(), None),
+          testMethods => GetAllTestMethodsPage(None, testMethods._1, testMethods._2)
+        )
+    )
+  }
+}
+
+object GetAllTestMethodsPaged {
+  def apply(queue: OrgQueue, page: PageRequest): Future[GetAllTestMethodsPage] = {
+    val promise = Promise[GetAllTestMethodsPage]()
+    queue.add(new GetAllTestMethodsPaged(promise, page))
+    promise.future
+  }
+}
+
 object OrgQueue {
+
+  /** Number of threads used to run read-only requests */
+  final val READER_THREADS: Int = Math.max(2, Runtime.getRuntime.availableProcessors() / 2)
+
+  private val readerFactory: ThreadFactory = (r: Runnable) => {
+    val t = new Thread(r)
+    t.setDaemon(true)
+    t.setName("apex-link request reader")
+    t
+  }
+
+  /** JSON-RPC id of the request being received, used to support cancellation */
+  val requestId: DynamicVariable[Option[String]] = new DynamicVariable[Option[String]](None)
+
+  @volatile private var notifier: Option[String => Unit] = None
+  @volatile private var issueNotifications: Boolean      = false
+
+  /** Set the sender for notifications to the client */
+  def setNotifier(sender: Option[String => Unit]): Unit = {
+    notifier = sender
+  }
+
+  /** Enable or disable IssuesChanged notifications, applies to the current & any later queues */
+  def setIssueNotifications(enabled: Boolean): Unit = {
+    issueNotifications = enabled
+    synchronized {
+      _instance
+    }.foreach(_.setIssueNotifications(enabled))
+  }
+
+  private def notifyIssues(version: Int, deltas: Seq[IssuesDelta]): Unit = {
+    notifier.foreach(
+      send =>
+        send(
+          RPCServer.notification(
+            IssuesChanged.METHOD,
+            JSONRPCPickler.write(IssuesChanged(version, deltas.map(FileIssuesDelta(_)).toArray))
+          )
+        )
+    )
+  }
+
+  private val batch = new DynamicVariable[Option[mutable.ArrayBuffer[(OrgQueue, APIRequest)]]](None)
+
+  /** Hold back the requests added by an operation, such as receiving the messages of a JSON-RPC batch, then queue
+    * them as a single BatchRequest per queue so they are processed together.
+    */
+  def batched[T](op: => T): T = {
+    val requests = mutable.ArrayBuffer[(OrgQueue, APIRequest)]()
+    try {
+      batch.withValue(Some(requests))(op)
+    } finally {
+      var remaining = requests.toSeq
+      while (remaining.nonEmpty) {
+        val target      = remaining.head._1
+        val (run, rest) = remaining.span(_._1 eq target)
+        target.enqueue(new BatchRequest(run.map(_._2)))
+        remaining = rest
+      }
+    }
+  }
+
   private var _instance: Option[OrgQueue] = None
 
+  /* Marker queued to stop the dispatcher when a queue is closed */
+  private object Stop extends APIRequest {
+    val promise: Promise[Unit] = Promise[Unit]()
+
+    override def process(queue: OrgQueue): Unit = ()
+  }
+
   def open(path: String): OrgQueue = {
     synchronized {
+      _instance.foreach(_.close())
       _instance = Some(new OrgQueue(path))
       _instance.get
     }
   }
 
+  /** Close the current queue, if there is one. */
+  def close(): Unit = {
+    synchronized {
+      _instance.foreach(_.close())
+      _instance = None
+    }
+  }
+
+  /** Cancel a request on the current queue by its JSON-RPC id. */
+  def cancel(id: String): Unit = {
+    synchronized {
+      _instance
+    }.foreach(_.cancel(id))
+  }
+
   def instance(): OrgQueue = {
     synchronized {
       _instance.get
@@ -444,6 +969,16 @@ class OrgAPIImpl extends OrgAPI {
     Future.successful(())
   }
 
+  override def setFileWatching(enabled: Boolean): Future[Unit] = {
+    ServerOps.setFileWatching(enabled)
+    Future.successful(())
+  }
+
+  override def setIssueNotifications(enabled: Boolean): Future[Unit] = {
+    OrgQueue.setIssueNotifications(enabled)
+    Future.successful(())
+  }
+
   override def open(directory: String): Future[OpenResult] = {
     OrgQueue.open(directory)
     OpenRequest(OrgQueue.instance())
@@ -456,6 +991,14 @@ class OrgAPIImpl extends OrgAPI {
     GetIssues(OrgQueue.instance(), includeWarnings, maxIssuesPerFile)
   }
 
+  override def getIssuesPage(
+    includeWarnings: Boolean,
+    maxIssuesPerFile: Int,
+    page: PageRequest
+  ): Future[GetIssuesPage] = {
+    GetIssuesPaged(OrgQueue.instance(), includeWarnings, maxIssuesPerFile, page)
+  }
+
   override def hasUpdatedIssues: Future[Array[String]] = {
     HasUpdatedIssues(OrgQueue.instance())
   }
@@ -484,6 +1027,13 @@ class OrgAPIImpl extends OrgAPI {
     TypeIdentifiers(OrgQueue.instance(), apexOnly)
   }
 
+  override def typeIdentifiersPage(
+    apexOnly: Boolean,
+    page: PageRequest
+  ): Future[GetTypeIdentifiersPage] = {
+    TypeIdentifiersPaged(OrgQueue.instance(), apexOnly, page)
+  }
+
   override def dependencyGraph(
     identifiers: IdentifiersRequest,
     depth: Int,
@@ -499,6 +1049,23 @@ class OrgAPIImpl extends OrgAPI {
     )
   }
 
+  override def dependencyGraphPage(
+    identifiers: IdentifiersRequest,
+    depth: Int,
+    apexOnly: Boolean,
+    ignoring: IdentifiersRequest,
+    page: PageRequest
+  ): Future[DependencyGraphPage] = {
+    DependencyGraphPaged(
+      OrgQueue.instance(),
+      identifiers.identifiers,
+      depth,
+      apexOnly,
+      ignoring.identifiers,
+      page
+    )
+  }
+
   override def identifierLocation(request: IdentifierRequest): Future[IdentifierLocationResult] = {
     IdentifierLocation(OrgQueue.instance(), request.identifier)
   }
@@ -544,4 +1111,8 @@ class OrgAPIImpl extends OrgAPI {
   override def getAllTestMethods(): Future[Array[TestMethod]] = {
     GetAllTestMethods(OrgQueue.instance())
   }
+
+  override def getAllTestMethodsPage(page: PageRequest): Future[GetAllTestMethodsPage] = {
+    GetAllTestMethodsPaged(OrgQueue.instance(), page)
+  }
 }
@@ -16,12 +16,14 @@ package com.nawforce.apexlink.rpc
 
 import com.nawforce.pkgforce.diagnostics.LoggerOps
 
-import java.io.{BufferedReader, InputStreamReader, PrintStream}
+import java.io.{FileDescriptor, FileInputStream, FileOutputStream}
+import java.util.concurrent.CancellationException
 import io.github.shogowada.scala.jsonrpc.serializers.UpickleJSONSerializer
 import io.github.shogowada.scala.jsonrpc.server.JSONRPCServer
 import io.github.shogowada.scala.jsonrpc.serializers.UpickleJSONSerializer._
 
 import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.Future
 import scala.util.{Failure, Success}
 
 // In case IntelliJ messes up the imports again stick this back in
@@ -29,51 +31,274 @@ import scala.util.{Failure, Success}
 
 class RPCTerminatedException(msg: String) extends Exception(msg)
 
-class RPCServer {
+class RPCServer(api: OrgAPI = new OrgAPIImpl()) {
   private val serializer = new UpickleJSONSerializer()
   private val server     = JSONRPCServer(serializer)
 
-  server.bindAPI[OrgAPI](new OrgAPIImpl())
+  server.bindAPI[OrgAPI](api)
 
   def run(): Unit = {
-    val input   = new BufferedReader(new InputStreamReader(System.in))
-    var message = new StringBuilder
-    val block   = new Array[Char](1024)
+    val reader = new MessageReader(new FileInputStream(FileDescriptor.in).getChannel)
+    val writer = new MessageWriter(new FileOutputStream(FileDescriptor.out).getChannel)
+    OrgQueue.setNotifier(Some(writer.write))
     while (true) {
-      val read = input.read(block)
-      if (read == -1)
-        throw new RPCTerminatedException("Read -1 from stdin")
-      LoggerOps.trace(s"RPCServer Received $read chars")
-
-      val existingLength = message.length()
-      message.append(new String(block.slice(0, read)))
-      var terminator = message.indexOf('\u0000', existingLength)
-      while (terminator != -1) {
-        val msg = message.slice(0, terminator).mkString
-        LoggerOps.trace(s"RPCServer Terminated message, ${msg.length} chars")
-        handleMessage(msg, System.out)
-        message = message.slice(terminator + 1, message.length)
-        LoggerOps.trace(s"RPCServer Residual data, ${message.length} chars")
-        terminator = message.indexOf('\u0000')
+      val message = reader.next()
+      if (message.isEmpty) {
+        // Close the org before exiting so queued cache writes are completed
+        OrgQueue.close()
+        throw new RPCTerminatedException("End of stream on stdin")
       }
+      LoggerOps.trace(s"RPCServer Terminated message, ${message.get.length} chars")
+      handleMessage(message.get, writer)
     }
   }
 
-  def handleMessage(message: String, stream: PrintStream): Unit = {
+  def handleMessage(message: String, writer: MessageWriter): Unit = {
     LoggerOps.trace(s"RPCServer Handling message, $message")
-    server.receive(message).onComplete {
-      case Success(Some(response: String)) =>
-        LoggerOps.trace(s"RPCServer Message handled successfully, $response")
-        synchronized {
-          stream.print(response)
-          stream.print('\u0000')
+    // Only batches need parsing here, single requests are parsed by the JSON-RPC server
+    val batch = if (RPCServer.isBatch(message)) RPCServer.parse(message) else None
+    batch match {
+      case Some(ujson.Arr(elements)) => handleBatch(elements.toSeq, writer)
+      case _                         => handleRequest(message, writer)
+    }
+  }
+
+  private def handleRequest(message: String, writer: MessageWriter): Unit = {
+    val header = RPCServer.MessageHeader(message)
+    if (handleCancel(header))
+      return
+
+    receive(message, header)
+      .onComplete {
+        case Success(Some(response: String)) =>
+          LoggerOps.trace(s"RPCServer Message handled successfully, $response")
+          writer.write(response)
+        case Success(None) =>
+          LoggerOps.trace(s"RPCServer No response to message, terminating")
+          throw new RPCTerminatedException(s"No response: $message")
+        case Failure(ex: Throwable) =>
+          LoggerOps.trace(s"RPCServer Exception to message ${ex.toString}, terminating")
+          throw ex
+      }
+  }
+
+  /** Handle a JSON-RPC batch. The requests are queued as a single job and their responses returned together, there
+    * is no response if the batch only contained notifications.
+    */
+  private def handleBatch(elements: Seq[ujson.Value], writer: MessageWriter): Unit = {
+    if (elements.isEmpty) {
+      writer.write(RPCServer.invalidRequestResponse)
+      return
+    }
+
+    val responses = OrgQueue.batched {
+      elements.map(element => {
+        val header = RPCServer.MessageHeader(element)
+        if (handleCancel(header))
+          Future.successful(None)
+        else
+          receive(ujson.write(element), header)
+      })
+    }
+
+    Future
+      .sequence(responses)
+      .onComplete {
+        case Success(responses) =>
+          val handled = responses.flatten
+          LoggerOps.trace(s"RPCServer Batch handled successfully, ${handled.size} responses")
+          if (handled.nonEmpty)
+            writer.write(handled.mkString("[", ",", "]"))
+        case Failure(ex: Throwable) =>
+          LoggerOps.trace(s"RPCServer Exception to batch ${ex.toString}, terminating")
+          throw ex
+      }
+  }
+
+  // Cancellation is handled here as the request ids are not visible to the API
+  private def handleCancel(header: RPCServer.MessageHeader): Boolean = {
+    if (header.method.contains(RPCServer.CANCEL_METHOD)) {
+      header.cancelId.foreach(OrgQueue.cancel)
+      true
+    } else {
+      false
+    }
+  }
+
+  private def receive(message: String, header: RPCServer.MessageHeader): Future[Option[String]] = {
+    OrgQueue.requestId
+      .withValue(header.id) {
+        server.receive(message)
+      }
+      .recover {
+        case _: CancellationException if header.id.nonEmpty =>
+          LoggerOps.trace(s"RPCServer Request ${header.id.get} cancelled")
+          Some(RPCServer.cancelledResponse(header.id.get))
+        case ex: Exception if header.id.nonEmpty =>
+          LoggerOps.trace(s"RPCServer Request ${header.id.get} failed, ${ex.toString}")
+          Some(RPCServer.internalErrorResponse(header.id.get, ex))
+      }
+  }
+}
+
+object RPCServer {
+
+  /** Notification used by clients to cancel a request, as in the Language Server Protocol */
+  final val CANCEL_METHOD: String = "$/cancelRequest"
+
+  /** Error code for a cancelled request, as in the Language Server Protocol */
+  final val REQUEST_CANCELLED: Int = -32800
+
+  /** Error code for a request that failed, as in JSON-RPC 2.0 */
+  final val INTERNAL_ERROR: Int = -32603
+
+  /** Method & id from a message, the ids are held in their JSON encoded form. */
+  case class MessageHeader(method: Option[String], id: Option[String], cancelId: Option[String])
+
+  object MessageHeader {
+    val empty: MessageHeader = MessageHeader(None, None, None)
+
+    /** Header from a message, obtained by scanning its top level fields rather than parsing the whole message.
+      * Cancel notifications are small so they are parsed to recover the id of the request to cancel.
+      */
+    def apply(message: String): MessageHeader = {
+      new HeaderScanner(message).scan() match {
+        case Some(header) if header.method.contains(CANCEL_METHOD) =>
+          parse(message).map(MessageHeader(_)).getOrElse(empty)
+        case Some(header) => header
+        case None         => empty
+      }
+    }
+
+    def apply(value: ujson.Value): MessageHeader = {
+      value match {
+        case ujson.Obj(fields) =>
+          val params = fields.get("params").collect { case obj: ujson.Obj => obj.value }
+          MessageHeader(
+            fields.get("method").collect { case ujson.Str(method) => method },
+            fields.get("id").map(ujson.write(_)),
+            params.flatMap(_.get("id")).map(ujson.write(_))
+          )
+        case _ => empty
+      }
+    }
+  }
+
+  /* Scanner for the method & id fields of a JSON object. Values of other fields are skipped over without being
+   * decoded and the scan stops once both fields have been found, the id is returned as it appears in the message.
+   * None is returned if the message is not an object or is malformed before the fields were found.
+   */
+  private class HeaderScanner(message: String) {
+    private var pos = 0
+
+    def scan(): Option[MessageHeader] = {
+      try {
+        var method: Option[String] = None
+        var id: Option[String]     = None
+        expect('{')
+        var more = peek() != '}'
+        while (more && (method.isEmpty || id.isEmpty)) {
+          val key = token(skipString())
+          expect(':')
+          val value = token(skipValue())
+          key match {
+            case "\"method\"" => method = Some(ujson.read(value).str)
+            case "\"id\""     => id = Some(value)
+            case _            => ()
+          }
+          more = peek() == ','
+          if (more) pos += 1
         }
-      case Success(None) =>
-        LoggerOps.trace(s"RPCServer No response to message, terminating")
-        throw new RPCTerminatedException(s"No response: $message")
-      case Failure(ex: Throwable) =>
-        LoggerOps.trace(s"RPCServer Exception to message ${ex.toString}, terminating")
-        throw ex
+        Some(MessageHeader(method, id, None))
+      } catch {
+        case _: Exception => None
+      }
+    }
+
+    // Run a skip returning the text skipped over, surrounding whitespace is excluded
+    private def token(skip: => Unit): String = {
+      skipWhitespace()
+      val start = pos
+      skip
+      val end = pos
+      skipWhitespace()
+      message.substring(start, end)
+    }
+
+    private def peek(): Char = {
+      skipWhitespace()
+      message.charAt(pos)
+    }
+
+    private def expect(c: Char): Unit = {
+      if (peek() != c)
+        throw new IllegalArgumentException(s"Expected '$c' at $pos")
+      pos += 1
+    }
+
+    private def skipWhitespace(): Unit = {
+      while (pos < message.length && Character.isWhitespace(message.charAt(pos))) pos += 1
+    }
+
+    private def skipString(): Unit = {
+      expect('"')
+      while (message.charAt(pos) != '"') {
+        pos += (if (message.charAt(pos) == '\\') 2 else 1)
+      }
+      pos += 1
+    }
+
+    private def skipValue(): Unit = {
+      message.charAt(pos) match {
+        case '"' => skipString()
+        case '{' | '[' =>
+          var depth = 0
+          do {
+            message.charAt(pos) match {
+              case '"' => skipString()
+              case c =>
+                if (c == '{' || c == '[') depth += 1
+                else if (c == '}' || c == ']') depth -= 1
+                pos += 1
+            }
+          } while (depth > 0)
+        case _ =>
+          while (pos < message.length && ",}] \t\r\n".indexOf(message.charAt(pos)) < 0) pos += 1
+      }
+    }
+  }
+
+  /** Test if a message is a batch, i.e. its first non-whitespace character opens an array */
+  def isBatch(message: String): Boolean = {
+    val start = message.indexWhere(!Character.isWhitespace(_))
+    start >= 0 && message.charAt(start) == '['
+  }
+
+  /** Parse a message, None if it is not valid JSON */
+  def parse(message: String): Option[ujson.Value] = {
+    try {
+      Some(ujson.read(message))
+    } catch {
+      case _: Exception => None
     }
   }
+
+  def cancelledResponse(id: String): String = {
+    s"""{"jsonrpc":"2.0","id":$id,"error":{"code":$REQUEST_CANCELLED,"message":"Request cancelled"}}"""
+  }
+
+  /** Response for a request that failed while being handled */
+  def internalErrorResponse(id: String, ex: Throwable): String = {
+    val message = ujson.write(ujson.Str(ex.toString))
+    s"""{"jsonrpc":"2.0","id":$id,"error":{"code":$INTERNAL_ERROR,"message":$message}}"""
+  }
+
+  /** Notification message for a method with JSON encoded params */
+  def notification(method: String, params: String): String = {
+    s"""{"jsonrpc":"2.0","method":"$method","params":$params}"""
+  }
+
+  /** Response to an empty batch, as required by JSON-RPC 2.0 */
+  final val invalidRequestResponse: String =
+    """{"jsonrpc":"2.0","id":null,"error":{"code":-32600,"message":"Invalid Request"}}"""
 }
@@ -0,0 +1,131 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+
+package com.nawforce.apexlink.rpc
+
+import scala.collection.mutable
+import scala.reflect.{classTag, ClassTag}
+
+/** Server side cursors over large results so they can be returned in pages. A result is evaluated once, as an
+  * iterator, and later pages are taken from where the previous page finished so results may be produced lazily. Each
+  * cursor records the version of the data the result was evaluated from, a later page is rejected if the version has
+  * changed so that pages from different results are not mixed. Only the most recently opened cursors are retained
+  * and those not used within the idle timeout expire.
+  */
+final class ResultCursors(
+  maxCursors: Int = ResultCursors.MAX_CURSORS,
+  idleTimeout: Long = ResultCursors.IDLE_TIMEOUT_MS
+) {
+
+  private class Cursor(
+    val tag: ClassTag[_],
+    val version: Int,
+    val values: Iterator[_],
+    @volatile var lastUsed: Long
+  )
+
+  private val cursors = mutable.LinkedHashMap[Int, Cursor]()
+  private var nextId  = 0
+
+  /** Take a page of a result. If a cursor is provided the next page is taken from it, otherwise the result is
+    * evaluated and its first page returned. Returns the page & a cursor for the next page, if there is one.
+    */
+  def page[T: ClassTag](request: PageRequest, version: Int)(
+    values: => Iterator[T]
+  ): Either[String, (Array[T], Option[Int])] = {
+    val pageSize = Math.max(1, request.pageSize)
+    expireIdle()
+    request.cursor match {
+      case None     => Right(first(values, version, pageSize))
+      case Some(id) => next[T](id, version, pageSize)
+    }
+  }
+
+  /** Number of open cursors, for testing */
+  def size: Int = synchronized { cursors.size }
+
+  private def first[T: ClassTag](
+    values: Iterator[T],
+    version: Int,
+    pageSize: Int
+  ): (Array[T], Option[Int]) = {
+    val page = takePage(values, pageSize)
+    if (!values.hasNext)
+      return (page, None)
+
+    synchronized {
+      nextId += 1
+      cursors.put(nextId, new Cursor(classTag[T], version, values, System.currentTimeMillis()))
+      if (cursors.size > maxCursors)
+        cursors.remove(cursors.head._1)
+      (page, Some(nextId))
+    }
+  }
+
+  private def next[T: ClassTag](
+    id: Int,
+    version: Int,
+    pageSize: Int
+  ): Either[String, (Array[T], Option[Int])] = {
+    val cursor = synchronized {
+      cursors.get(id).filter(_.tag == classTag[T])
+    }
+    if (cursor.isEmpty)
+      return Left(s"Unknown or expired cursor $id")
+    if (cursor.get.version != version) {
+      synchronized { cursors.remove(id) }
+      return Left(s"Result for cursor $id has changed")
+    }
+
+    // Pages of a cursor are taken in turn, its iterator is not shared with other cursors
+    cursor.get.synchronized {
+      val values = cursor.get.values.asInstanceOf[Iterator[T]]
+      val page   = takePage(values, pageSize)
+      cursor.get.lastUsed = System.currentTimeMillis()
+      if (values.hasNext) {
+        Right((page, Some(id)))
+      } else {
+        synchronized { cursors.remove(id) }
+        Right((page, None))
+      }
+    }
+  }
+
+  // Iterator.take can not be used as the iterator must remain usable for later pages
+  private def takePage[T: ClassTag](values: Iterator[T], pageSize: Int): Array[T] = {
+    val page  = mutable.ArrayBuilder.make[T]
+    var taken = 0
+    while (taken < pageSize && values.hasNext) {
+      page += values.next()
+      taken += 1
+    }
+    page.result()
+  }
+
+  private def expireIdle(): Unit = {
+    val minLastUsed = System.currentTimeMillis() - idleTimeout
+    synchronized {
+      cursors.filterInPlace((_, cursor) => cursor.lastUsed >= minLastUsed)
+    }
+  }
+}
+
+object ResultCursors {
+
+  /** Maximum number of open cursors */
+  final val MAX_CURSORS: Int = 8
+
+  /** Time after which an unused cursor expires */
+  final val IDLE_TIMEOUT_MS: Long = 5 * 60 * 1000
+}
@@ -26,6 +26,7 @@ import com.nawforce.pkgforce.names.{Name, TypeName}
 import com.nawforce.pkgforce.parsers.Nature
 import com.nawforce.pkgforce.path.{IdLocatable, Locatable, Location, PathLocation}
 
+import java.util.concurrent.atomic.AtomicReference
 import scala.collection.immutable.ArraySeq
 import scala.collection.mutable
 import scala.util.hashing.MurmurHash3
@@ -213,23 +214,35 @@ trait ApexClassDeclaration extends ApexDeclaration with DependencyHolder {
     }
   }
 
+  /** The method map is built without holding a lock as building recurses into super types, if another thread
+    * publishes a map first that is used instead and the map built here is discarded along with its errors.
+    */
   def methodMap: MethodMap = {
-    if (_methodMap.isEmpty)
-      _methodMap = Some(createMethodMap)
-    _methodMap.get
+    val current = _methodMap.get
+    if (current.nonEmpty)
+      return current.get
+
+    val created = createMethodMap
+    if (_methodMap.compareAndSet(current, Some(created))) {
+      created.errors.foreach(OrgImpl.log)
+      created
+    } else {
+      _methodMap.get.getOrElse(created)
+    }
   }
 
   protected def resetMethodMapIfInvalid(): Unit = {
-    if (_methodMap.exists(_.deepHash != deepHash)) {
-      _methodMap = None
+    val current = _methodMap.get
+    if (current.exists(_.deepHash != deepHash)) {
+      _methodMap.compareAndSet(current, None)
     }
   }
 
-  private var _methodMap: Option[MethodMap] = None
+  private val _methodMap = new AtomicReference[Option[MethodMap]](None)
 
   private def createMethodMap: MethodMap = {
     val errorLocation = Some(idPathLocation)
-    val methods = superClassDeclaration match {
+    superClassDeclaration match {
       case Some(at: ApexClassDeclaration) =>
         MethodMap(this, errorLocation, at.methodMap, localMethods, interfaceDeclarations)
       case Some(td: TypeDeclaration) =>
@@ -237,9 +250,6 @@ trait ApexClassDeclaration extends ApexDeclaration with DependencyHolder {
       case _ =>
         MethodMap(this, errorLocation, MethodMap.empty(), localMethods, interfaceDeclarations)
     }
-
-    methods.errors.foreach(OrgImpl.log)
-    methods
   }
 
   override def methods: ArraySeq[MethodDeclaration] = {
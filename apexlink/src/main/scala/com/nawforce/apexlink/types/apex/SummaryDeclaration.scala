@@ -85,6 +85,25 @@ object DependentValidation {
     })
   }
 
+  /* Collect the names appearing in Type dependencies. This over-approximates the types depended on, names are
+   * collected from all parts of the TypeName so that dependencies on inner or namespaced types are included.
+   */
+  def collectTypeDependencyNames(
+    dependents: Array[DependentSummary],
+    accum: mutable.Set[Name]
+  ): Unit = {
+    def collect(typeName: TypeName): Unit = {
+      accum.add(typeName.name)
+      typeName.params.foreach(collect)
+      typeName.outer.foreach(collect)
+    }
+
+    dependents.foreach {
+      case d: TypeDependentSummary => collect(d.typeId.typeName)
+      case _                       => ()
+    }
+  }
+
   /* Collect actual dependents from DependentSummary entries. This must run against full package metadata since the
    * dependents may be inherited elements coming from other types in the package.
    */
@@ -400,6 +419,18 @@ class SummaryDeclaration(
         .collect { case x: SummaryDeclaration => x }
         .forall(_.hasValidDependencies(typeCache))
 
+  /** Collect the names of types this summary, its members & nested types may depend on. */
+  def collectTypeDependencyNames(accum: mutable.Set[Name]): Unit = {
+    DependentValidation.collectTypeDependencyNames(dependents, accum)
+    blocks.foreach(b => DependentValidation.collectTypeDependencyNames(b.dependents, accum))
+    localFields.foreach(f => DependentValidation.collectTypeDependencyNames(f.dependents, accum))
+    constructors.foreach(c => DependentValidation.collectTypeDependencyNames(c.dependents, accum))
+    localMethods.foreach(m => DependentValidation.collectTypeDependencyNames(m.dependents, accum))
+    nestedTypes
+      .collect { case x: SummaryDeclaration => x }
+      .foreach(_.collectTypeDependencyNames(accum))
+  }
+
   override def propagateDependencies(): Unit = {
     super.propagateDependencies()
 
@@ -51,12 +51,13 @@ trait Dependent extends IdentityEquality {
   def getDependencyHolders: Set[DependencyHolder] =
     Option(dependencyHolders).map(_.toSet).getOrElse(DependencyHolder.emptySet)
 
-  // Add a new holder
-  def addDependencyHolder(dependencyHolder: DependencyHolder): Unit = {
-    if (dependencyHolders == null)
-      dependencyHolders = new SkinnyWeakSet[DependencyHolder]()
-    dependencyHolders.add(dependencyHolder)
-  }
+  // Add a new holder, holders may be added from parallel validations
+  def addDependencyHolder(dependencyHolder: DependencyHolder): Unit =
+    synchronized {
+      if (dependencyHolders == null)
+        dependencyHolders = new SkinnyWeakSet[DependencyHolder]()
+      dependencyHolders.add(dependencyHolder)
+    }
 }
 
 /** Holder of a dependencies, */
@@ -68,11 +68,13 @@ trait DependentType extends TypeDeclaration {
 
   def addTypeDependencyHolder(typeId: TypeId): Unit = {
     if (typeId != this.typeId) {
-      if (
-        typeDependencyHolders == null || typeDependencyHolders == DependentType.emptyTypeDependencyHolders
-      )
-        typeDependencyHolders = new SkinnySet()
-      typeDependencyHolders.add(typeId)
+      synchronized {
+        if (
+          typeDependencyHolders == null || typeDependencyHolders == DependentType.emptyTypeDependencyHolders
+        )
+          typeDependencyHolders = new SkinnySet()
+        typeDependencyHolders.add(typeId)
+      }
     }
   }
 
@@ -296,20 +296,22 @@ object PlatformTypeDeclaration {
    * delegate here if needed. This does not handle generics or inner classes
    */
   def getDeclaration(name: DotName): Option[PlatformTypeDeclaration] = {
-    declarationCache.getOrElseUpdate(
-      name, {
-        val matched = classNameMap.get(name)
-        assert(matched.size < 2, s"Found multiple platform type matches for $name")
-        matched.map(
-          name =>
-            new PlatformTypeDeclaration(
-              classOf[PlatformTypeDeclaration].getClassLoader
-                .loadClass(platformPackage + "." + name),
-              None
-            )
-        )
-      }
-    )
+    declarationCache.synchronized {
+      declarationCache.getOrElseUpdate(
+        name, {
+          val matched = classNameMap.get(name)
+          assert(matched.size < 2, s"Found multiple platform type matches for $name")
+          matched.map(
+            name =>
+              new PlatformTypeDeclaration(
+                classOf[PlatformTypeDeclaration].getClassLoader
+                  .loadClass(platformPackage + "." + name),
+                None
+              )
+          )
+        }
+      )
+    }
   }
 
   /* Valid platform class names */
@@ -65,7 +65,7 @@ object PlatformTypes {
   def withLoadingObserver[T](observer: PlatformTypeObserver)(op: => T): T = {
     try {
       loadingObservers = loadingObservers :+ observer
-      firedTypes.clear()
+      firedTypes.synchronized { firedTypes.clear() }
       op
     } finally {
       loadingObservers = loadingObservers.filterNot(_ eq observer)
@@ -103,17 +103,20 @@ object PlatformTypes {
     val aliasedTypeName = typeAliasMap.getOrElse(typeName, typeName)
     val response =
       if (aliasedTypeName.isNonGeneric) {
-        typeCache.getOrElseUpdate(typeName, findType(aliasedTypeName))
+        typeCache.synchronized { typeCache.get(typeName) } match {
+          case Some(cached) => cached
+          case None =>
+            val found = findType(aliasedTypeName)
+            typeCache.synchronized { typeCache.getOrElseUpdate(typeName, found) }
+        }
       } else {
         findType(aliasedTypeName)
       }
 
     response match {
       case Right(td) =>
-        if (!firedTypes.contains(td.typeName)) {
+        if (firedTypes.synchronized { firedTypes.add(td.typeName) })
           fireLoadingEvents(td)
-          firedTypes.add(td.typeName)
-        }
       case _ => ()
     }
 
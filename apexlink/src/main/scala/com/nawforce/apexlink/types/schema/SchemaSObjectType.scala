@@ -65,52 +65,54 @@ final case class SchemaSObjectType(module: Module)
   }
 
   /** Add an SObject, this will create supporting types needed for reflective access to this SObject. */
-  def add(sobjectName: Name, hasFieldSets: Boolean): FieldDeclaration = {
-
-    // Handlers for Schema.SObjectType.<name>.Fields, Schema.<name>.Fields & Schema.<name>.SObjectType
-    val typeName = TypeName(sobjectName, Nil, Some(TypeNames.Schema))
-    val fields   = SObjectFields(typeName, module)
-    module.upsertMetadata(SObjectTypeFields(sobjectName, module))
-    module.upsertMetadata(fields)
-    module.upsertMetadata(SObjectTypeImpl(sobjectName, fields, module))
-
-    // Optional handlers for fieldSets & shares
-    val sobjectTypeName = TypeName(sobjectName, Nil, Some(TypeNames.Schema))
-    if (hasFieldSets)
-      module.upsertMetadata(SObjectTypeFieldSets(sobjectName, module))
-    if (sobjectTypeName.isShare)
-      module.upsertMetadata(SObjectFieldRowCause(sobjectName, module))
-
-    // The Schema.SObjectType.<name> field that anchors all this
-    val describeField =
-      CustomFieldDeclaration(
-        sobjectName,
-        TypeNames.describeSObjectResultOf(sobjectTypeName),
-        None,
-        asStatic = true
-      )
-    sobjectFields.put(sobjectName, Some(describeField))
-    describeField
-  }
+  def add(sobjectName: Name, hasFieldSets: Boolean): FieldDeclaration =
+    synchronized {
+
+      // Handlers for Schema.SObjectType.<name>.Fields, Schema.<name>.Fields & Schema.<name>.SObjectType
+      val typeName = TypeName(sobjectName, Nil, Some(TypeNames.Schema))
+      val fields   = SObjectFields(typeName, module)
+      module.upsertMetadata(SObjectTypeFields(sobjectName, module))
+      module.upsertMetadata(fields)
+      module.upsertMetadata(SObjectTypeImpl(sobjectName, fields, module))
+
+      // Optional handlers for fieldSets & shares
+      val sobjectTypeName = TypeName(sobjectName, Nil, Some(TypeNames.Schema))
+      if (hasFieldSets)
+        module.upsertMetadata(SObjectTypeFieldSets(sobjectName, module))
+      if (sobjectTypeName.isShare)
+        module.upsertMetadata(SObjectFieldRowCause(sobjectName, module))
+
+      // The Schema.SObjectType.<name> field that anchors all this
+      val describeField =
+        CustomFieldDeclaration(
+          sobjectName,
+          TypeNames.describeSObjectResultOf(sobjectTypeName),
+          None,
+          asStatic = true
+        )
+      sobjectFields.put(sobjectName, Some(describeField))
+      describeField
+    }
 
-  def remove(sobjectName: Name): Unit = {
-    module.removeMetadata(
-      TypeNames.sObjectFields$(TypeName(sobjectName, Nil, Some(TypeNames.Schema)))
-    )
-    module.removeMetadata(
-      TypeNames.sObjectTypeFields$(TypeName(sobjectName, Nil, Some(TypeNames.Schema)))
-    )
-    module.removeMetadata(
-      TypeNames.sObjectType$(TypeName(sobjectName, Nil, Some(TypeNames.Schema)))
-    )
-    module.removeMetadata(
-      TypeNames.sObjectTypeFieldSets$(TypeName(sobjectName, Nil, Some(TypeNames.Schema)))
-    )
-    module.removeMetadata(
-      TypeNames.sObjectFieldRowCause$(TypeName(sobjectName, Nil, Some(TypeNames.Schema)))
-    )
-    sobjectFields.remove(sobjectName)
-  }
+  def remove(sobjectName: Name): Unit =
+    synchronized {
+      module.removeMetadata(
+        TypeNames.sObjectFields$(TypeName(sobjectName, Nil, Some(TypeNames.Schema)))
+      )
+      module.removeMetadata(
+        TypeNames.sObjectTypeFields$(TypeName(sobjectName, Nil, Some(TypeNames.Schema)))
+      )
+      module.removeMetadata(
+        TypeNames.sObjectType$(TypeName(sobjectName, Nil, Some(TypeNames.Schema)))
+      )
+      module.removeMetadata(
+        TypeNames.sObjectTypeFieldSets$(TypeName(sobjectName, Nil, Some(TypeNames.Schema)))
+      )
+      module.removeMetadata(
+        TypeNames.sObjectFieldRowCause$(TypeName(sobjectName, Nil, Some(TypeNames.Schema)))
+      )
+      sobjectFields.remove(sobjectName)
+    }
 
   /* Find a specific SObject */
   override def findField(name: Name, staticContext: Option[Boolean]): Option[FieldDeclaration] = {
@@ -122,19 +124,21 @@ final case class SchemaSObjectType(module: Module)
       return Some(add(name, hasFieldSets = true))
     }
 
-    sobjectFields
-      .getOrElseUpdate(
-        name, {
-          // This handles cases where describe is used on a Platform SObject without the SObject first being used
-          // directly in Apex which would normally cause the describe handler to be created.
-          val td = TypeResolver(TypeName(name), module).toOption
-          if (td.nonEmpty && td.get.isSObject) {
-            Some(add(name, hasFieldSets = true))
-          } else {
-            None
+    synchronized {
+      sobjectFields
+        .getOrElseUpdate(
+          name, {
+            // This handles cases where describe is used on a Platform SObject without the SObject first being used
+            // directly in Apex which would normally cause the describe handler to be created.
+            val td = TypeResolver(TypeName(name), module).toOption
+            if (td.nonEmpty && td.get.isSObject) {
+              Some(add(name, hasFieldSets = true))
+            } else {
+              None
+            }
           }
-        }
-      )
+        )
+    }
   }
 
   override def findMethod(
@@ -221,21 +225,22 @@ final case class SObjectTypeFields(sobjectName: Name, module: Module)
 
   private val ghostedSobjectFields: mutable.Map[Name, FieldDeclaration] = mutable.Map()
 
-  override def findField(name: Name, staticContext: Option[Boolean]): Option[FieldDeclaration] = {
-    // TODO: check staticContext
-
-    sobjectFields
-      .get(name)
-      .orElse(ghostedSobjectFields.get(name))
-      .orElse({
-        val typeName = EncodedName(name).asTypeName
-        if (module.isGhostedType(typeName)) {
-          ghostedSobjectFields
-            .put(name, CustomFieldDeclaration(name, TypeNames.DescribeFieldResult, None))
-        }
-        ghostedSobjectFields.get(name)
-      })
-  }
+  override def findField(name: Name, staticContext: Option[Boolean]): Option[FieldDeclaration] =
+    synchronized {
+      // TODO: check staticContext
+
+      sobjectFields
+        .get(name)
+        .orElse(ghostedSobjectFields.get(name))
+        .orElse({
+          val typeName = EncodedName(name).asTypeName
+          if (module.isGhostedType(typeName)) {
+            ghostedSobjectFields
+              .put(name, CustomFieldDeclaration(name, TypeNames.DescribeFieldResult, None))
+          }
+          ghostedSobjectFields.get(name)
+        })
+    }
 
   override def findMethod(
     name: Name,
@@ -301,16 +306,19 @@ final case class SObjectFields(baseType: TypeName, module: Module)
       return Some(CustomFieldDeclaration(name, TypeNames.sObjectType$(baseType), None))
 
     // Provide other fields on the SObject
-    sobjectFields
-      .get(name)
-      .orElse(ghostedSobjectFields.get(name))
-      .orElse({
-        val typeName = EncodedName(name).asTypeName
-        if (module.isGhostedType(typeName)) {
-          ghostedSobjectFields.put(name, CustomFieldDeclaration(name, TypeNames.SObjectField, None))
-        }
-        ghostedSobjectFields.get(name)
-      })
+    synchronized {
+      sobjectFields
+        .get(name)
+        .orElse(ghostedSobjectFields.get(name))
+        .orElse({
+          val typeName = EncodedName(name).asTypeName
+          if (module.isGhostedType(typeName)) {
+            ghostedSobjectFields
+              .put(name, CustomFieldDeclaration(name, TypeNames.SObjectField, None))
+          }
+          ghostedSobjectFields.get(name)
+        })
+    }
   }
 
   override def findMethod(
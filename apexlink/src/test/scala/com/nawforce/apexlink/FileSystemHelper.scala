@@ -16,6 +16,7 @@ package com.nawforce.apexlink
 import java.nio.file.Files
 
 import com.google.common.jimfs.{Configuration, Jimfs}
+import com.nawforce.apexlink.org.CacheWriter
 import com.nawforce.pkgforce.documents.ParsedCache
 import com.nawforce.pkgforce.path.PathLike
 import com.nawforce.runtime.platform.Path
@@ -37,6 +38,7 @@ object FileSystemHelper {
       Files.write(path, kv._2.getBytes())
     })
 
+    CacheWriter.drain()
     ParsedCache.clear()
     verify(new Path(rootDir))
   }
@@ -53,8 +55,10 @@ object FileSystemHelper {
     })
 
     // Make sure cache is empty if we are going to use it
-    if (setupCache)
+    if (setupCache) {
+      CacheWriter.drain()
       ParsedCache.clear()
+    }
 
     try {
       verify(new Path(tempDir))
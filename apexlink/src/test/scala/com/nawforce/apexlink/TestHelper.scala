@@ -14,7 +14,7 @@
 package com.nawforce.apexlink
 
 import com.nawforce.apexlink.api.{Org, ServerOps, TypeSummary}
-import com.nawforce.apexlink.org.OrgImpl
+import com.nawforce.apexlink.org.{CacheWriter, OrgImpl}
 import com.nawforce.apexlink.plugins.{PluginsManager, UnusedPlugin}
 import com.nawforce.apexlink.types.apex.{ApexClassDeclaration, ApexFullDeclaration, FullDeclaration}
 import com.nawforce.apexlink.types.core.TypeDeclaration
@@ -31,6 +31,8 @@ trait TestHelper {
   def createOrg(path: PathLike): OrgImpl = {
     val plugins = PluginsManager.overridePlugins(Seq())
     try {
+      // Pending writes from an earlier org may be needed by this one
+      CacheWriter.drain()
       defaultOrg = Org.newOrg(path).asInstanceOf[OrgImpl]
       defaultOrg
     } finally {
@@ -41,6 +43,8 @@ trait TestHelper {
   def createOrgWithUnused(path: PathLike): OrgImpl = {
     val plugins = PluginsManager.overridePlugins(Seq(classOf[UnusedPlugin]))
     try {
+      // Pending writes from an earlier org may be needed by this one
+      CacheWriter.drain()
       defaultOrg = Org.newOrg(path).asInstanceOf[OrgImpl]
       defaultOrg
     } finally {
@@ -0,0 +1,124 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+
+package com.nawforce.apexlink.org
+
+import com.nawforce.apexlink.api.ServerOps
+import com.nawforce.apexlink.{FileSystemHelper, TestHelper}
+import com.nawforce.pkgforce.path.PathLike
+import org.scalatest.funsuite.AnyFunSuite
+
+import scala.collection.mutable
+
+class FileWatcherTest extends AnyFunSuite with TestHelper {
+
+  private def withWatching[T](op: => T): T = {
+    val current = ServerOps.setFileWatching(true)
+    try {
+      op
+    } finally {
+      ServerOps.setFileWatching(current)
+    }
+  }
+
+  private def awaitMessages(org: OrgImpl): String = {
+    val deadline = System.currentTimeMillis() + 10000
+    while (getMessages(org).isEmpty && System.currentTimeMillis() < deadline) Thread.sleep(50)
+    getMessages(org)
+  }
+
+  test("External delete is refreshed") {
+    withWatching {
+      FileSystemHelper.runTempDir(
+        Map("Foo.cls" -> "public class Foo {}", "Bar.cls" -> "public class Bar { Foo a; }")
+      ) { root: PathLike =>
+        val org = createOrg(root)
+        try {
+          assert(org.issues.isEmpty)
+          root.join("Foo.cls").delete()
+          assert(awaitMessages(org).contains("No type declaration found for 'Foo'"))
+        } finally {
+          org.close()
+        }
+      }
+    }
+  }
+
+  test("External edit is refreshed") {
+    withWatching {
+      FileSystemHelper.runTempDir(Map("Foo.cls" -> "public class Foo {}")) { root: PathLike =>
+        val org = createOrg(root)
+        try {
+          assert(org.issues.isEmpty)
+          root.createFile("Foo.cls", "public class Foo { Bar a; }")
+          assert(awaitMessages(org).contains("No type declaration found for 'Bar'"))
+        } finally {
+          org.close()
+        }
+      }
+    }
+  }
+
+  test("Ignored directory is not watched") {
+    withWatching {
+      FileSystemHelper.runTempDir(
+        Map(
+          ".forceignore"    -> "ignored/",
+          "Foo.cls"         -> "public class Foo {}",
+          "ignored/Bar.cls" -> "public class Bar {}",
+          "watched/Baz.cls" -> "public class Baz {}"
+        )
+      ) { root: PathLike =>
+        val org = createOrg(root)
+        try {
+          assert(org.issues.isEmpty)
+          assert(org.fileWatcher.map(_.watchedCount).contains(2))
+        } finally {
+          org.close()
+        }
+      }
+    }
+  }
+
+  test("Rescan finds current & deleted files") {
+    FileSystemHelper.runTempDir(
+      Map(
+        "Foo.cls"     -> "public class Foo {}",
+        "Bar.cls"     -> "public class Bar {}",
+        "sub/Baz.cls" -> "public class Baz {}"
+      )
+    ) { root: PathLike =>
+      val org = createOrg(root)
+      root.join("Bar.cls").delete()
+      root.createFile("Qux.cls", "public class Qux {}")
+
+      val modules = org.packages.flatMap(_.modules)
+      val watcher = new FileWatcher(org, modules)
+      try {
+        val changed = mutable.Map[PathLike, Module]()
+        watcher.rescan(modules.head, root.native.asInstanceOf[java.nio.file.Path], changed)
+        assert(changed.keySet.map(_.basename) == Set("Foo.cls", "Bar.cls", "Qux.cls", "Baz.cls"))
+      } finally {
+        watcher.close()
+      }
+    }
+  }
+
+  test("Not watching by default") {
+    FileSystemHelper.runTempDir(Map("Foo.cls" -> "public class Foo {}")) { root: PathLike =>
+      val org = createOrg(root)
+      assert(org.fileWatcher.isEmpty)
+    }
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+
+package com.nawforce.apexlink.org
+
+import com.nawforce.apexlink.api.ServerOps
+import com.nawforce.apexlink.{FileSystemHelper, TestHelper}
+import com.nawforce.pkgforce.names.{Name, TypeIdentifier, TypeName}
+import com.nawforce.pkgforce.path.PathLike
+import org.scalatest.funsuite.AnyFunSuite
+
+import scala.collection.mutable
+
+class FlusherTest extends AnyFunSuite with TestHelper {
+
+  private def withDelays[T](quietPeriod: Long, maxDelay: Long)(op: => T): T = {
+    val currentQuietPeriod = ServerOps.setFlushQuietPeriod(quietPeriod)
+    val currentMaxDelay    = ServerOps.setFlushMaxDelay(maxDelay)
+    try {
+      op
+    } finally {
+      ServerOps.setFlushQuietPeriod(currentQuietPeriod)
+      ServerOps.setFlushMaxDelay(currentMaxDelay)
+    }
+  }
+
+  private val files =
+    Map("Foo.cls" -> "public class Foo {}", "Bar.cls" -> "public class Bar { Foo a; }")
+
+  private def deleteFoo(org: OrgImpl, root: PathLike): Unit = {
+    assert(org.issues.isEmpty)
+    root.join("Foo.cls").delete()
+    org.unmanaged.refresh(root.join("Foo.cls"))
+    assert(org.isDirty())
+  }
+
+  test("Refresh processed after quiet period") {
+    withDelays(50, 60000) {
+      FileSystemHelper.run(files) { root: PathLike =>
+        val org = createOrg(root)
+        deleteFoo(org, root)
+        org.awaitFlushed()
+        assert(!org.isDirty())
+        assert(getMessages(org).contains("No type declaration found for 'Foo'"))
+      }
+    }
+  }
+
+  test("Refresh processed after max delay") {
+    withDelays(60000, 50) {
+      FileSystemHelper.run(files) { root: PathLike =>
+        val org = createOrg(root)
+        deleteFoo(org, root)
+        org.awaitFlushed()
+        assert(!org.isDirty())
+        assert(getMessages(org).contains("No type declaration found for 'Foo'"))
+      }
+    }
+  }
+
+  test("Flush now bypasses delay") {
+    withDelays(60000, 60000) {
+      FileSystemHelper.run(files) { root: PathLike =>
+        val org     = createOrg(root)
+        val started = System.currentTimeMillis()
+        deleteFoo(org, root)
+        org.flushNow()
+        assert(!org.isDirty())
+        assert(System.currentTimeMillis() - started < 30000)
+        assert(getMessages(org).contains("No type declaration found for 'Foo'"))
+      }
+    }
+  }
+
+  test("Failed refresh does not stop later refreshes") {
+    withDelays(50, 60000) {
+      FileSystemHelper.run(files) { root: PathLike =>
+        val org = createOrg(root)
+
+        // A null path fails the refresh on the flusher thread
+        org.queueMetadataRefresh(RefreshRequest(org.unmanaged, null))
+        org.awaitFlushed()
+        assert(!org.isDirty())
+
+        deleteFoo(org, root)
+        org.awaitFlushed()
+        assert(getMessages(org).contains("No type declaration found for 'Foo'"))
+      }
+    }
+  }
+
+  test("Closed org releases those waiting on a flush") {
+    withDelays(60000, 60000) {
+      FileSystemHelper.run(files) { root: PathLike =>
+        val org = createOrg(root)
+        deleteFoo(org, root)
+        org.close()
+        org.awaitFlushed()
+        assert(org.isDirty())
+      }
+    }
+  }
+
+  test("Manual flush not processed until flushed") {
+    val current = ServerOps.setAutoFlush(false)
+    try {
+      FileSystemHelper.run(files) { root: PathLike =>
+        val org = createOrg(root)
+        deleteFoo(org, root)
+        Thread.sleep(100)
+        assert(org.isDirty())
+        org.flushNow()
+        assert(!org.isDirty())
+      }
+    } finally {
+      ServerOps.setAutoFlush(current)
+    }
+  }
+
+  test("Snapshot reads see last published types & issues") {
+    val current = ServerOps.setAutoFlush(false)
+    try {
+      FileSystemHelper.run(files) { root: PathLike =>
+        val org    = createOrg(root)
+        val module = org.unmanaged.modules.head
+        val barId  = TypeIdentifier(None, TypeName(Name("Bar")))
+        val bar    = root.join("Bar.cls")
+
+        // Flushing publishes refreshed issues
+        deleteFoo(org, root)
+        assert(org.withSnapshot(org.issues.issuesForFileInternal(bar)).isEmpty)
+        org.flushNow()
+        assert(org.issues.hasUpdatedIssues.contains(bar.toString))
+        assert(org.withSnapshot(org.issues.issuesForFileInternal(bar)).nonEmpty)
+        assert(!org.issues.hasUpdatedIssues.contains(bar.toString))
+
+        // Type changes are not visible to snapshot reads until published
+        module.removeMetadata(barId.typeName)
+        assert(org.findTypeIdentifier(barId).isEmpty)
+        assert(org.withSnapshot(org.findTypeIdentifier(barId)).nonEmpty)
+        module.publishSnapshot()
+        assert(org.withSnapshot(org.findTypeIdentifier(barId)).isEmpty)
+      }
+    } finally {
+      ServerOps.setAutoFlush(current)
+    }
+  }
+
+  test("Snapshot reads see published test classes") {
+    val current = ServerOps.setAutoFlush(false)
+    try {
+      FileSystemHelper.run(
+        Map("Dummy.cls" -> "@isTest public class Dummy { @isTest static void t() {} }")
+      ) { root: PathLike =>
+        val org    = createOrg(root)
+        val module = org.unmanaged.modules.head
+        module.publishSnapshot()
+
+        module.removeMetadata(TypeName(Name("Dummy")))
+        assert(org.getAllTestMethods.isEmpty)
+        assert(org.withSnapshot(org.getAllTestMethods).length == 1)
+        assert(org.withSnapshot(module.testClasses.size) == 1)
+      }
+    } finally {
+      ServerOps.setAutoFlush(current)
+    }
+  }
+
+  test("Snapshot read completion leaves issues & types unchanged") {
+    withDelays(60000, 60000) {
+      FileSystemHelper.run(files) { root: PathLike =>
+        val org    = createOrg(root)
+        val module = org.unmanaged.modules.head
+        val bar    = root.join("Bar.cls")
+        deleteFoo(org, root)
+        org.flushNow()
+
+        val issues    = org.issues.issuesForFileInternal(bar)
+        val typeCount = module.typeCount
+        val deltas    = mutable.ArrayBuffer[(Int, Seq[IssuesDelta])]()
+        org.issues.setDeltaListener(Some((version, delta) => deltas.append((version, delta))))
+
+        // Contact is added to the module on first use, this should only be visible to the read
+        val content = "public class Bar { Contact a; void func() { a."
+        assert(
+          org.withSnapshot(org.getCompletionItemsInternal(bar, 1, content.length, content)).nonEmpty
+        )
+        assert(module.typeCount == typeCount)
+        assert(org.issues.issuesForFileInternal(bar) == issues)
+        org.publishSnapshot()
+        assert(deltas.isEmpty)
+      }
+    }
+  }
+
+  test("Issue deltas provided after refresh") {
+    withDelays(60000, 60000) {
+      FileSystemHelper.run(files) { root: PathLike =>
+        val org    = createOrg(root)
+        val deltas = mutable.ArrayBuffer[(Int, Seq[IssuesDelta])]()
+        org.issues.setDeltaListener(Some((version, delta) => {
+          // Deltas are sent to clients so should not be provided while issues are locked
+          assert(!Thread.holdsLock(org.issues))
+          deltas.append((version, delta))
+        }))
+
+        deleteFoo(org, root)
+        org.flushNow()
+        assert(deltas.length == 1)
+        assert(deltas.head._1 == 1)
+        assert(deltas.head._2.map(_.path) == Seq(root.join("Bar.cls")))
+        assert(deltas.head._2.head.added.length == 1 && deltas.head._2.head.removed.isEmpty)
+
+        root.createFile("Foo.cls", "public class Foo {}")
+        org.unmanaged.refresh(root.join("Foo.cls"))
+        org.flushNow()
+        assert(deltas.length == 2)
+        assert(deltas(1)._1 == 2)
+        assert(deltas(1)._2.head.added.isEmpty && deltas(1)._2.head.removed.length == 1)
+      }
+    }
+  }
+}
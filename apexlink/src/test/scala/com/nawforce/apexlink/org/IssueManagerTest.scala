@@ -14,8 +14,9 @@
 package com.nawforce.apexlink.org
 
 import com.nawforce.apexlink.{FileSystemHelper, TestHelper}
-import com.nawforce.pkgforce.diagnostics.{Issue, SYNTAX_CATEGORY}
+import com.nawforce.pkgforce.diagnostics.{Issue, SYNTAX_CATEGORY, UNUSED_CATEGORY}
 import com.nawforce.pkgforce.path.{Location, PathLike}
+import com.nawforce.runtime.platform.Path
 import org.scalatest.funsuite.AnyFunSuite
 
 class IssueManagerTest extends AnyFunSuite with TestHelper {
@@ -221,4 +222,30 @@ class IssueManagerTest extends AnyFunSuite with TestHelper {
       }
     }
   }
+
+  test("Concurrent updates & reads") {
+    val issues = new IssuesManager()
+    val paths  = (0 until 50).map(i => Path(s"/File$i.cls"))
+    val unused = paths.map(path => Issue(path, UNUSED_CATEGORY, Location(1, 1), "Unused"))
+
+    val writer = new Thread(() => {
+      (0 until 20).foreach(_ => {
+        paths.zip(unused).foreach(pu => issues.replaceUnusedIssues(pu._1, Seq(pu._2)))
+        paths.foreach(path => issues.add(Issue(path, SYNTAX_CATEGORY, Location(1, 2), "Syntax")))
+      })
+    })
+    writer.start()
+    while (writer.isAlive) {
+      paths.foreach(path => {
+        issues.issuesForFileInternal(path)
+        issues.ignoreUpdatedIssuesInternal(path)
+      })
+      issues.issuesForFilesInternal(null, includeWarnings = true, 0)
+      issues.hasUpdatedIssues
+      issues.getMissing
+    }
+    writer.join()
+
+    paths.foreach(path => assert(issues.issuesForFileInternal(path).length == 21))
+  }
 }
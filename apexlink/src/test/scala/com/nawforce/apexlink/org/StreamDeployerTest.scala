@@ -0,0 +1,82 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+
+package com.nawforce.apexlink.org
+
+import com.nawforce.apexlink.api.ServerOps
+import com.nawforce.apexlink.{FileSystemHelper, TestHelper}
+import com.nawforce.pkgforce.path.PathLike
+import org.scalatest.funsuite.AnyFunSuite
+
+class StreamDeployerTest extends AnyFunSuite with TestHelper {
+
+  // Classes referencing each other with a mix of syntax & semantic errors
+  private val classes: Map[String, String] = (0 until 50)
+    .map(i => {
+      val body =
+        if (i % 7 == 0) s"public class Class$i { Class${i + 1} a; Missing$i b; }"
+        else if (i % 11 == 0) s"public class Class$i { Class${i - 1} a "
+        else s"public class Class$i { Class${(i + 1) % 50} a; }"
+      s"Class$i.cls" -> body
+    })
+    .toMap
+
+  // Other metadata using the classes, with a bad field type & a malformed label file
+  private val metadata: Map[String, String] = (0 until 10)
+    .map(i => {
+      s"Object${i}__c.object" -> customObject(
+        s"Object$i",
+        Seq((s"Field${i}__c", Some(if (i % 3 == 0) "Silly" else "Text"), None))
+      )
+    })
+    .toMap ++ Map(
+    "CustomLabels.labels" -> "<CustomLabels xmlns=\"http://soap.sforce.com/2006/04/metadata\">",
+    "Uses.cls"            -> "public class Uses { Object1__c a; Class1 b; }"
+  )
+
+  private def loadWithThreads(threads: Int, pipelined: Boolean = false): (Seq[String], String) = {
+    val currentThreads   = ServerOps.setParserThreads(threads)
+    val currentPipelined = ServerOps.setPipelinedStream(pipelined)
+    try {
+      FileSystemHelper.run(classes ++ metadata) { root: PathLike =>
+        val org   = createOrg(root)
+        val types = org.unmanaged.orderedModules.head.types.keys.map(_.toString).toSeq.sorted
+        (types, getMessages(org).split("\n").toSeq.sorted.mkString("\n"))
+      }
+    } finally {
+      ServerOps.setParserThreads(currentThreads)
+      ServerOps.setPipelinedStream(currentPipelined)
+    }
+  }
+
+  test("Parallel parse matches sequential") {
+    val sequential = loadWithThreads(1)
+    assert(sequential._1.exists(_ == "Class1"))
+    assert(sequential._2.nonEmpty)
+    assert(loadWithThreads(4) == sequential)
+  }
+
+  test("Parallel parse is repeatable") {
+    val first = loadWithThreads(4)
+    (0 until 3).foreach(_ => assert(loadWithThreads(4) == first))
+  }
+
+  test("Pipelined stream matches sequential") {
+    val sequential = loadWithThreads(1)
+    assert(sequential._1.exists(_ == "Schema.Object1__c"))
+    assert(sequential._2.contains("CustomLabels.labels"))
+    assert(loadWithThreads(1, pipelined = true) == sequential)
+    assert(loadWithThreads(4, pipelined = true) == sequential)
+  }
+}
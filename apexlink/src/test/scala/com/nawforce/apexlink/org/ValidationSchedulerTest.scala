@@ -0,0 +1,90 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+
+package com.nawforce.apexlink.org
+
+import com.nawforce.apexlink.api.ServerOps
+import com.nawforce.apexlink.{FileSystemHelper, TestHelper}
+import com.nawforce.pkgforce.path.PathLike
+import org.scalatest.funsuite.AnyFunSuite
+
+class ValidationSchedulerTest extends AnyFunSuite with TestHelper {
+
+  // Inheritance chains & interfaces with cross-class calls, SObject use and a mix of errors
+  private val classes: Map[String, String] = (0 until 60)
+    .flatMap(i => {
+      val parent = if (i % 5 == 0) "" else s"extends Base${i - 1} "
+      val body =
+        s"""public virtual class Base$i ${parent}implements Iface${i % 4} {
+         |  public virtual Integer value$i() { return $i; }
+         |  public void run() { Base${(i + 7) % 60} other = new Base${(i + 7) % 60}(); other.value${(i + 7) % 60}(); }
+         |  public Account acc() { return [SELECT Id, Name FROM Account LIMIT 1]; }
+         |  ${if (i % 9 == 0) s"public void broken() { Missing$i.call(); }" else ""}
+         |  ${if (i % 13 == 0) s"public String bad() { return value$i(); }" else ""}
+         |}""".stripMargin
+      Seq(s"Base$i.cls" -> body)
+    })
+    .toMap ++ (0 until 4).map(i => s"Iface$i.cls" -> s"public interface Iface$i {}").toMap
+
+  private def issuesWith(
+    parallel: Boolean,
+    threads: Int = ServerOps.getValidationThreads
+  ): String = {
+    val current        = ServerOps.setParallelValidation(parallel)
+    val currentThreads = ServerOps.setValidationThreads(threads)
+    try {
+      FileSystemHelper.run(classes) { root: PathLike =>
+        val org = createOrg(root)
+        getMessages(org)
+      }
+    } finally {
+      ServerOps.setParallelValidation(current)
+      ServerOps.setValidationThreads(currentThreads)
+    }
+  }
+
+  test("Parallel validation issues match sequential") {
+    val sequential = issuesWith(parallel = false)
+    assert(sequential.contains("Missing0"))
+    (0 until 3).foreach(_ => assert(issuesWith(parallel = true) == sequential))
+  }
+
+  test("Parallel validation issues match sequential with configured threads") {
+    val sequential = issuesWith(parallel = false)
+    assert(issuesWith(parallel = true, threads = 2) == sequential)
+    assert(issuesWith(parallel = true, threads = 1) == sequential)
+  }
+
+  test("Parallel re-validation issues match sequential") {
+    def refreshed(parallel: Boolean): String = {
+      val current = ServerOps.setParallelValidation(parallel)
+      try {
+        withManualFlush {
+          FileSystemHelper.run(classes) { root: PathLike =>
+            val org = createOrg(root)
+            val pkg = org.unmanaged
+            root.createFile("Base0.cls", classes("Base0.cls").replace("return 0;", "return 1;"))
+            pkg.refresh(root.join("Base0.cls"))
+            assert(org.flush())
+            getMessages(org)
+          }
+        }
+      } finally {
+        ServerOps.setParallelValidation(current)
+      }
+    }
+
+    assert(refreshed(parallel = true) == refreshed(parallel = false))
+  }
+}
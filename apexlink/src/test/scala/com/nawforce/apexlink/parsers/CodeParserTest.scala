@@ -21,6 +21,8 @@ import com.nawforce.runtime.platform.Path
 import org.scalatest.BeforeAndAfter
 import org.scalatest.funsuite.AnyFunSuite
 
+import java.lang.management.ManagementFactory
+
 class CodeParserTest extends AnyFunSuite with BeforeAndAfter with TestHelper {
 
   before {
@@ -43,6 +45,93 @@ class CodeParserTest extends AnyFunSuite with BeforeAndAfter with TestHelper {
     assert(result.issues.nonEmpty)
   }
 
+  test("Good class parsed without fallback") {
+    val fallbacks = CodeParser.fallbackCount
+    val parser    = CodeParser(Path("Hello.cls"), SourceData("public class Hello {void func() {}}"))
+    val result    = parser.parseClass()
+    assert(result.issues.isEmpty)
+    assert(CodeParser.fallbackCount == fallbacks)
+  }
+
+  test("Broken class falls back with all errors reported") {
+    val fallbacks = CodeParser.fallbackCount
+    val parser = CodeParser(
+      Path("Hello.cls"),
+      SourceData("public class Hello {void func1(){f()} void func2(){f()} }")
+    )
+    val result = parser.parseClass()
+    assert(CodeParser.fallbackCount > fallbacks)
+    assert(
+      result.issues.map(_.diagnostic.message) == Seq("missing ';' at '}'", "missing ';' at '}'")
+    )
+  }
+
+  test("Caches retained below limit") {
+    val current = CodeParser.setCacheLimit(Int.MaxValue)
+    try {
+      CodeParser(Path("Hello.cls"), SourceData("public class Hello {void func() {}}")).parseClass()
+      val states = CodeParser.cacheStates
+      assert(states > 0)
+      assert(!CodeParser.trimCaches())
+      assert(CodeParser.cacheStates >= states)
+    } finally {
+      CodeParser.setCacheLimit(current)
+    }
+  }
+
+  test("Caches cleared above limit") {
+    val current = CodeParser.setCacheLimit(0)
+    try {
+      CodeParser(Path("Hello.cls"), SourceData("public class Hello {void func() {}}")).parseClass()
+      assert(CodeParser.cacheStates > 0)
+      assert(CodeParser.trimCaches())
+    } finally {
+      CodeParser.setCacheLimit(current)
+    }
+  }
+
+  test("Caches re-warmed after clear") {
+    val current = CodeParser.setCacheRewarm(true)
+    try {
+      CodeParser.clearCaches()
+      var waited = 0
+      while (CodeParser.cacheStates < 100 && waited < 10000) {
+        Thread.sleep(10)
+        waited += 10
+      }
+      assert(CodeParser.cacheStates >= 100)
+    } finally {
+      CodeParser.setCacheRewarm(current)
+    }
+  }
+
+  test("Nested parse does not reuse pooled parser") {
+    val outer = CodeParser(Path("Outer.cls"), SourceData("public class Outer {}"))
+    val result = outer.parse(parser => {
+      val inner = CodeParser(Path("Inner.cls"), SourceData("public class Inner {}")).parseClass()
+      (parser.compilationUnit(), inner.value)
+    })
+    assert(result.issues.isEmpty)
+    assert(result.value._1.typeDeclaration().classDeclaration().id().getText == "Outer")
+    assert(result.value._2.typeDeclaration().classDeclaration().id().getText == "Inner")
+  }
+
+  test("Pooled parsing allocates less per parse") {
+    val bean   = ManagementFactory.getThreadMXBean.asInstanceOf[com.sun.management.ThreadMXBean]
+    val source = SourceData("public class Hello {void func() {Integer a = 1;}}")
+
+    def allocated(op: => Unit): Long = {
+      (1 to 100).foreach(_ => op)
+      val start = bean.getThreadAllocatedBytes(Thread.currentThread().getId)
+      (1 to 1000).foreach(_ => op)
+      (bean.getThreadAllocatedBytes(Thread.currentThread().getId) - start) / 1000
+    }
+
+    val pooled   = allocated(CodeParser(Path("Hello.cls"), source).parseClass())
+    val unpooled = allocated(CodeParser(Path("Hello.cls"), source).parseClassReturningParser())
+    assert(pooled < unpooled)
+  }
+
   test("UTF-8 class") {
     FileSystemHelper.run(
       Map("Dummy.cls" -> "public class Dummy {{String a = 'Kimi Räikkönen';}}")
@@ -0,0 +1,85 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+
+package com.nawforce.apexlink.parsers
+
+import com.nawforce.apexparser.{ApexLexer, CaseInsensitiveInputStream}
+import com.nawforce.runtime.parsers.{InsensitiveASCIIStream, SourceData}
+import org.antlr.v4.runtime.misc.Interval
+import org.antlr.v4.runtime.{CharStream, CharStreams, IntStream}
+import org.scalatest.funsuite.AnyFunSuite
+
+import java.io.ByteArrayInputStream
+import java.nio.charset.StandardCharsets
+import scala.jdk.CollectionConverters._
+
+class InsensitiveASCIIStreamTest extends AnyFunSuite {
+
+  private val sample =
+    """public class Dummy {
+      |  // A Comment
+      |  private STRING Name = 'Hello World';
+      |  public void Func() { List<Account> a = [SELECT Id FROM Account WHERE Name = :Name]; }
+      |}""".stripMargin
+
+  private def tokens(stream: CharStream): Seq[(Int, String, Int, Int, Int, Int)] = {
+    val lexer = new ApexLexer(stream)
+    lexer.getAllTokens.asScala.toSeq.map(
+      t =>
+        (t.getType, t.getText, t.getStartIndex, t.getStopIndex, t.getLine, t.getCharPositionInLine)
+    )
+  }
+
+  test("Look ahead is lower case") {
+    val stream = SourceData("AbC").asInsensitiveStream
+    assert(stream.LA(1) == 'a')
+    assert(stream.LA(2) == 'b')
+    assert(stream.LA(3) == 'c')
+    assert(stream.LA(4) == IntStream.EOF)
+    stream.consume()
+    assert(stream.LA(-1) == 'a')
+    assert(stream.LA(0) == 0)
+  }
+
+  test("Text retains case") {
+    val stream = SourceData("AbC").asInsensitiveStream
+    assert(stream.getText(Interval.of(0, 2)) == "AbC")
+    assert(stream.getText(Interval.of(1, 5)) == "bC")
+  }
+
+  test("Offset source data") {
+    val data   = "xxAbCxx".getBytes(StandardCharsets.UTF_8)
+    val stream = new InsensitiveASCIIStream(data, 2, 3)
+    assert(stream.size() == 3)
+    assert(stream.LA(1) == 'a')
+    assert(stream.getText(Interval.of(0, 2)) == "AbC")
+  }
+
+  test("Tokens match decoded stream") {
+    val data   = sample.getBytes(StandardCharsets.UTF_8)
+    val stream = SourceData(data).asInsensitiveStream
+    assert(stream.isInstanceOf[InsensitiveASCIIStream])
+    assert(
+      tokens(stream) == tokens(
+        new CaseInsensitiveInputStream(CharStreams.fromStream(new ByteArrayInputStream(data)))
+      )
+    )
+  }
+
+  test("Non-ASCII source decoded") {
+    val stream = SourceData("String a = 'R\u00e4ikk\u00f6nen';").asInsensitiveStream
+    assert(stream.isInstanceOf[CaseInsensitiveInputStream])
+    assert(tokens(stream).map(_._2).contains("'R\u00e4ikk\u00f6nen'"))
+  }
+}
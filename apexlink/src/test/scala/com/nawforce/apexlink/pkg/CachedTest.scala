@@ -16,14 +16,18 @@ package com.nawforce.apexlink.pkg
 import com.nawforce.apexlink.api.{IssueOptions, ServerOps}
 import com.nawforce.apexlink.names.TypeNames
 import com.nawforce.apexlink.names.TypeNames.TypeNameUtils
-import com.nawforce.apexlink.org.PackageImpl
+import com.nawforce.apexlink.org.{CacheWriter, PackageImpl}
 import com.nawforce.apexlink.types.apex.{FullDeclaration, SummaryDeclaration}
 import com.nawforce.apexlink.{FileSystemHelper, TestHelper}
+import com.nawforce.pkgforce.documents.{DirectoryStore, ParsedCache}
 import com.nawforce.pkgforce.names.{Name, TypeIdentifier, TypeName}
 import com.nawforce.pkgforce.path.PathLike
 import org.scalatest.BeforeAndAfter
 import org.scalatest.funsuite.AnyFunSuite
 
+import java.nio.file.Files
+import java.nio.file.attribute.FileTime
+
 class CachedTest extends AnyFunSuite with TestHelper with BeforeAndAfter {
 
   def assertIsNotDeclaration(
@@ -118,6 +122,116 @@ class CachedTest extends AnyFunSuite with TestHelper with BeforeAndAfter {
     )
   }
 
+  test("Cached super class with pack cache") {
+    val packedCache = ServerOps.setPackedCache(true)
+    try {
+      cacheTest(
+        "public virtual class Bar {}",
+        "public class Foo extends Bar {}",
+        "public virtual class Bar {/* Changed */}"
+      )
+    } finally {
+      ServerOps.setPackedCache(packedCache)
+    }
+  }
+
+  test("Cached flush writes complete after await") {
+    FileSystemHelper.run(Map("Dummy.cls" -> "public class Dummy {}")) { root: PathLike =>
+      val org = createOrg(root)
+      assert(org.issues.isEmpty)
+      org.flush()
+      org.awaitCacheWrites()
+      assert(CacheWriter.pendingCount == 0)
+      assertIsSummaryDeclaration(createOrg(root).unmanaged, "Dummy")
+    }
+  }
+
+  test("Cached index saved after later flushes") {
+    FileSystemHelper.run(Map("Dummy.cls" -> "public class Dummy {}")) { root: PathLike =>
+      val org = createOrg(root)
+      org.flush()
+      org.awaitCacheWrites()
+      val cacheDir = org.parsedCache.get.path
+      val tracked  = new DirectoryStore(cacheDir, ParsedCache.SIZE_LIMIT).size
+
+      root.createFile("Dummy.cls", "public class Dummy {/* Changed */}")
+      org.unmanaged.refresh(root.join("Dummy.cls"))
+      org.flush()
+      org.awaitCacheWrites()
+      assert(new DirectoryStore(cacheDir, ParsedCache.SIZE_LIMIT).size == tracked + 1)
+    }
+  }
+
+  test("Cached flush writes complete on close") {
+    FileSystemHelper.run(Map("Dummy.cls" -> "public class Dummy {}")) { root: PathLike =>
+      val org = createOrg(root)
+      org.flush()
+      org.close()
+      assert(CacheWriter.pendingCount == 0)
+      assertIsSummaryDeclaration(createOrg(root).unmanaged, "Dummy")
+    }
+  }
+
+  test("Cached manifest skips unchanged files") {
+    FileSystemHelper.runTempDir(
+      Map(
+        "Bar.cls" -> "public virtual class Bar {}",
+        "Foo.cls" -> "public class Foo extends Bar {}"
+      ),
+      setupCache = true
+    ) { root: PathLike =>
+      def age(name: String): Unit = {
+        val path = root.join(name).native.asInstanceOf[java.nio.file.Path]
+        Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() - 60000))
+      }
+
+      // Cache classes, with timestamps old enough that the manifest will trust them
+      age("Bar.cls")
+      age("Foo.cls")
+      val org = createOrg(root)
+      assert(org.issues.isEmpty)
+      org.flush()
+      assertIsSummaryDeclaration(createOrg(root).unmanaged, "Foo")
+
+      // Same size & timestamp so manifest is trusted and the changed content is not seen
+      val fooPath      = root.join("Foo.cls").native.asInstanceOf[java.nio.file.Path]
+      val lastModified = Files.getLastModifiedTime(fooPath)
+      root.createFile("Foo.cls", "public class Foo extends Baz {}")
+      Files.setLastModifiedTime(fooPath, lastModified)
+      assertIsSummaryDeclaration(createOrg(root).unmanaged, "Foo")
+
+      // Timestamp change forces content to be hashed
+      age("Foo.cls")
+      val org2 = createOrg(root)
+      assertIsFullDeclaration(org2.unmanaged, "Foo")
+      assert(org2.issues.nonEmpty)
+    }
+  }
+
+  test("Cached rejection propagates to dependents") {
+    FileSystemHelper.run(
+      Map(
+        "A.cls"     -> "public virtual class A {}",
+        "B.cls"     -> "public virtual class B extends A {}",
+        "C.cls"     -> "public virtual class C { B b; }",
+        "D.cls"     -> "public class D extends C {}",
+        "Other.cls" -> "public class Other {}"
+      )
+    ) { root: PathLike =>
+      val org = createOrg(root)
+      assert(org.issues.isEmpty)
+      org.flush()
+
+      // Changing A should reject the cached chain depending on it but not Other
+      root.createFile("A.cls", "public virtual class A {/* Changed */}")
+      val org2 = createOrg(root)
+      assert(org2.issues.isEmpty)
+      val pkg2 = org2.unmanaged
+      Seq("A", "B", "C", "D").foreach(name => assertIsFullDeclaration(pkg2, name))
+      assertIsSummaryDeclaration(pkg2, "Other")
+    }
+  }
+
   test("Cached interface") {
     cacheTest(
       "public interface Bar {}",
@@ -0,0 +1,126 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+
+package com.nawforce.apexlink.rpc
+
+import org.scalatest.funsuite.AnyFunSuite
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream}
+import java.nio.ByteBuffer
+import java.nio.channels.{Channels, WritableByteChannel}
+import java.nio.charset.StandardCharsets
+import scala.collection.mutable
+
+class MessageFramingTest extends AnyFunSuite {
+
+  private def framed(messages: Seq[String]): Array[Byte] = {
+    val out = new ByteArrayOutputStream()
+    messages.foreach(message => {
+      out.write(message.getBytes(StandardCharsets.UTF_8))
+      out.write(0)
+    })
+    out.toByteArray
+  }
+
+  private def readAll(data: Array[Byte], bufferSize: Int): Seq[String] = {
+    val reader =
+      new MessageReader(
+        Channels.newChannel(new ByteArrayInputStream(data)),
+        new BufferPool(bufferSize)
+      )
+    Iterator.continually(reader.next()).takeWhile(_.nonEmpty).flatten.toSeq
+  }
+
+  /** Channel that counts bytes written */
+  private class CountingChannel extends WritableByteChannel {
+    var count = 0L
+
+    override def write(src: ByteBuffer): Int = {
+      val written = src.remaining()
+      src.position(src.limit())
+      count += written
+      written
+    }
+
+    override def isOpen: Boolean = true
+
+    override def close(): Unit = ()
+  }
+
+  test("Messages read") {
+    val messages = Seq("", "a", "{\"jsonrpc\":\"2.0\"}", "b" * 100)
+    assert(readAll(framed(messages), 1024) == messages)
+  }
+
+  test("Messages spanning buffers read") {
+    val messages = (1 to 50).map(i => s"message $i " + ("x" * (i * 7)))
+    assert(readAll(framed(messages), 16) == messages)
+  }
+
+  test("Multi-byte characters spanning buffers read") {
+    // 2, 3 & 4 byte UTF-8 sequences, a buffer size of 7 splits them across reads
+    val messages = Seq("\u00e4\u20ac\ud83d\ude00" * 20, "x\u20ac" * 30, "plain")
+    assert(messages.head.getBytes(StandardCharsets.UTF_8).length == 9 * 20)
+
+    val read = readAll(framed(messages), 7)
+    assert(read == messages)
+    assert(read.head.take(4) == "\u00e4\u20ac\ud83d\ude00")
+    assert(read.head.codePointCount(0, read.head.length) == 3 * 20)
+  }
+
+  test("Partial message at end of stream ignored") {
+    val data = framed(Seq("complete")) ++ "partial".getBytes(StandardCharsets.UTF_8)
+    assert(readAll(data, 1024) == Seq("complete"))
+  }
+
+  test("Messages written") {
+    val out      = new ByteArrayOutputStream()
+    val writer   = new MessageWriter(Channels.newChannel(out), 8)
+    val messages = Seq("hello", "\u00e4\u20ac\ud83d\ude00" * 10, "", "x" * 100)
+    messages.foreach(writer.write)
+    assert(out.toByteArray sameElements framed(messages))
+  }
+
+  test("50MB request/response replay") {
+    val sizes    = Seq(10, 1000, 100000, 1000000)
+    val messages = mutable.ArrayBuffer[String]()
+    var total    = 0L
+    var i        = 0
+    while (total < 50L * 1024 * 1024) {
+      val message = "{\"id\":" + i + ",\"data\":\"" + ("d" * sizes(i % sizes.size)) + "\"}"
+      messages.append(message)
+      total += message.length + 1
+      i += 1
+    }
+    val data = framed(messages.toSeq)
+
+    val started = System.nanoTime()
+    val reader =
+      new MessageReader(Channels.newChannel(new ByteArrayInputStream(data)))
+    val output = new CountingChannel()
+    val writer = new MessageWriter(output)
+    var count  = 0
+    var next   = reader.next()
+    while (next.nonEmpty) {
+      writer.write(next.get)
+      count += 1
+      next = reader.next()
+    }
+    val elapsed = (System.nanoTime() - started) / 1000000
+
+    assert(count == messages.size)
+    assert(output.count == data.length)
+    assert(elapsed < 60000, s"replay of ${data.length} bytes took ${elapsed}ms")
+  }
+}
@@ -163,6 +163,55 @@ class OrgAPITest extends AsyncFunSuite {
     issues
   }
 
+  test("Get Issues (paged)") {
+    val workspace = syntheticDir.join("sfdx-ns-test")
+    val orgAPI    = OrgAPI()
+    for {
+      result <- orgAPI.open(workspace.toString)
+      all    <- orgAPI.getIssues(includeWarnings = true, maxIssuesPerFile = 0)
+      first  <- orgAPI.getIssuesPage(includeWarnings = true, 0, PageRequest(3, None))
+      second <- orgAPI.getIssuesPage(includeWarnings = true, 0, PageRequest(3, first.cursor))
+      after  <- orgAPI.getIssuesPage(includeWarnings = true, 0, PageRequest(3, first.cursor))
+    } yield {
+      assert(result.error.isEmpty)
+      assert(first.error.isEmpty && first.issues.length == 3 && first.cursor.nonEmpty)
+      assert(second.error.isEmpty && second.issues.length == 1 && second.cursor.isEmpty)
+      assert((first.issues ++ second.issues) sameElements all.issues)
+      assert(after.error.nonEmpty && after.issues.isEmpty)
+    }
+  }
+
+  test("Get Dependency Graph (paged)") {
+    val workspace = syntheticDir.join("mdapi-test")
+    val orgAPI    = OrgAPI()
+    val hello     = IdentifiersRequest(Array(TypeIdentifier(None, TypeName(Name("Hello")))))
+    for {
+      result <- orgAPI.open(workspace.toString)
+      first <- orgAPI.dependencyGraphPage(
+        hello,
+        1,
+        apexOnly = true,
+        IdentifiersRequest(Array()),
+        PageRequest(1, None)
+      )
+      second <- orgAPI.dependencyGraphPage(
+        hello,
+        1,
+        apexOnly = true,
+        IdentifiersRequest(Array()),
+        PageRequest(1, first.cursor)
+      )
+    } yield {
+      assert(result.error.isEmpty)
+      assert(first.nodeData.map(_.identifier.typeName.name) sameElements Array(Name("Hello")))
+      assert(first.linkData sameElements Array(DependencyLink(0, 1, "uses")))
+      assert(first.cursor.nonEmpty)
+      assert(second.nodeData.map(_.identifier.typeName.name) sameElements Array(Name("World")))
+      assert(second.linkData.isEmpty)
+      assert(second.cursor.isEmpty)
+    }
+  }
+
   test("Get Dependency Graph (zero depth)") {
     val workspace = syntheticDir.join("mdapi-test")
     val orgAPI    = OrgAPI()
@@ -0,0 +1,358 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+
+package com.nawforce.apexlink.rpc
+
+import com.nawforce.apexlink.FileSystemHelper
+import com.nawforce.apexlink.org.OrgImpl
+import com.nawforce.pkgforce.names.{Name, TypeIdentifier, TypeName}
+import com.nawforce.pkgforce.path.PathLike
+import org.scalatest.funsuite.AnyFunSuite
+
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.{CancellationException, ConcurrentLinkedQueue, CountDownLatch, TimeUnit}
+import scala.concurrent.duration.DurationInt
+import scala.concurrent.{Await, Future, Promise}
+import scala.jdk.CollectionConverters._
+
+class OrgQueueTest extends AnyFunSuite {
+
+  private val classCount = 50
+
+  // Chain of classes, each using the previous, to give the dependency graph some work
+  private val files: Map[String, String] =
+    (0 until classCount)
+      .map(i => {
+        val body = if (i == 0) "" else s"Dummy${i - 1} a;"
+        (s"Dummy$i.cls", s"public class Dummy$i { $body }")
+      })
+      .toMap + ("Foo.cls" -> "public class Foo { String a; }")
+
+  private val content = "public class Foo { String a; void func() { a."
+
+  /** Request that blocks until released */
+  private class BlockingRequest(override val readOnly: Boolean) extends APIRequest {
+    val promise: Promise[Unit] = Promise[Unit]()
+    val started                = new CountDownLatch(1)
+    val release                = new CountDownLatch(1)
+
+    override def process(queue: OrgQueue): Unit = {
+      started.countDown()
+      release.await()
+      promise.success(())
+    }
+  }
+
+  /** Mutating request that reports when it is processed */
+  private class MarkerRequest extends APIRequest {
+    val promise: Promise[Unit] = Promise[Unit]()
+
+    override def process(queue: OrgQueue): Unit = promise.success(())
+  }
+
+  /** Read-only request that records when it is processed */
+  private class RecordingRequest(
+    name: String,
+    override val lane: RequestLane,
+    log: ConcurrentLinkedQueue[String]
+  ) extends APIRequest {
+    val promise: Promise[Unit] = Promise[Unit]()
+
+    override def readOnly: Boolean = true
+
+    override def process(queue: OrgQueue): Unit = {
+      log.add(name)
+      promise.success(())
+    }
+  }
+
+  /** Read-only request that repeatedly builds a deep dependency graph until stopped */
+  private class GraphRequest extends APIRequest {
+    val promise: Promise[Unit] = Promise[Unit]()
+    val started                = new CountDownLatch(1)
+    val stop                   = new AtomicBoolean(false)
+
+    override def readOnly: Boolean = true
+
+    override def process(queue: OrgQueue): Unit = {
+      val identifiers = Array(TypeIdentifier(None, TypeName(Name(s"Dummy${classCount - 1}"))))
+      started.countDown()
+      while (!stop.get())
+        queue.org.getDependencyGraph(identifiers, classCount, apexOnly = true, Array())
+      promise.success(())
+    }
+  }
+
+  /** Occupy all the reader threads so that read-only requests are held in the pool queue */
+  private def saturate(queue: OrgQueue): Seq[BlockingRequest] = {
+    val blockers = (0 until OrgQueue.READER_THREADS).map(_ => new BlockingRequest(readOnly = true))
+    blockers.foreach(queue.add)
+    blockers.foreach(blocker => assert(blocker.started.await(30, TimeUnit.SECONDS)))
+    blockers
+  }
+
+  private def withQueue[T](op: (OrgQueue, PathLike) => T): T = {
+    FileSystemHelper.runTempDir(files) { root: PathLike =>
+      val queue = new OrgQueue(root.toString)
+      try {
+        op(queue, root)
+      } finally {
+        queue.close()
+      }
+    }
+  }
+
+  private def complete(queue: OrgQueue, root: PathLike): Future[Array[CompletionItemLink]] = {
+    GetCompletionItems(queue, root.join("Foo.cls").toString, 1, content.length, content)
+  }
+
+  /** Time a series of completion requests, returning the p99 latency in milliseconds */
+  private def completionP99(queue: OrgQueue, root: PathLike, count: Int): Long = {
+    val timings = (0 until count)
+      .map(_ => {
+        val start = System.nanoTime()
+        assert(Await.result(complete(queue, root), 30.seconds).nonEmpty)
+        (System.nanoTime() - start) / 1000000
+      })
+      .sorted
+    timings(Math.ceil(count * 0.99).toInt - 1)
+  }
+
+  test("Read-only requests run while another is in progress") {
+    withQueue { (queue, root) =>
+      val blocking = new BlockingRequest(readOnly = true)
+      queue.add(blocking)
+      assert(blocking.started.await(30, TimeUnit.SECONDS))
+
+      assert(Await.result(complete(queue, root), 30.seconds).nonEmpty)
+      blocking.release.countDown()
+    }
+  }
+
+  test("Mutating request waits for in-flight read-only requests") {
+    withQueue { (queue, _) =>
+      val blocking = new BlockingRequest(readOnly = true)
+      val marker   = new MarkerRequest()
+      queue.add(blocking)
+      queue.add(marker)
+      assert(blocking.started.await(30, TimeUnit.SECONDS))
+
+      Thread.sleep(100)
+      assert(!marker.promise.isCompleted)
+      blocking.release.countDown()
+      Await.result(marker.promise.future, 30.seconds)
+    }
+  }
+
+  test("Read-only requests wait for earlier mutating request") {
+    withQueue { (queue, root) =>
+      val blocking = new BlockingRequest(readOnly = false)
+      queue.add(blocking)
+      assert(blocking.started.await(30, TimeUnit.SECONDS))
+
+      val completion = complete(queue, root)
+      Thread.sleep(100)
+      assert(!completion.isCompleted)
+      blocking.release.countDown()
+      assert(Await.result(completion, 30.seconds).nonEmpty)
+    }
+  }
+
+  test("Completion p99 stays flat while dependency graph runs") {
+    withQueue { (queue, root) =>
+      completionP99(queue, root, 20)
+      val baseline = completionP99(queue, root, 100)
+
+      val graph = new GraphRequest()
+      queue.add(graph)
+      assert(graph.started.await(30, TimeUnit.SECONDS))
+      val loaded = completionP99(queue, root, 100)
+      assert(!graph.promise.isCompleted)
+      graph.stop.set(true)
+      Await.result(graph.promise.future, 30.seconds)
+
+      assert(
+        loaded <= Math.max(baseline * 5, 1000),
+        s"p99 baseline ${baseline}ms, loaded ${loaded}ms"
+      )
+    }
+  }
+
+  test("Interactive requests run ahead of queued bulk requests") {
+    withQueue { (queue, _) =>
+      val blockers    = saturate(queue)
+      val log         = new ConcurrentLinkedQueue[String]()
+      val bulk        = new RecordingRequest("bulk", BulkLane, log)
+      val interactive = new RecordingRequest("interactive", InteractiveLane, log)
+      queue.add(bulk)
+      queue.add(interactive)
+      Thread.sleep(100)
+
+      blockers.head.release.countDown()
+      Await.result(interactive.promise.future, 30.seconds)
+      blockers.tail.foreach(_.release.countDown())
+      Await.result(bulk.promise.future, 30.seconds)
+      assert(log.asScala.toSeq == Seq("interactive", "bulk"))
+    }
+  }
+
+  test("Superseded completion is dropped before it runs") {
+    withQueue { (queue, root) =>
+      val blockers = saturate(queue)
+      val first    = complete(queue, root)
+      val second   = complete(queue, root)
+      blockers.foreach(_.release.countDown())
+
+      assertThrows[CancellationException](Await.result(first, 30.seconds))
+      assert(Await.result(second, 30.seconds).nonEmpty)
+    }
+  }
+
+  test("Cancelled request is dropped before it runs") {
+    withQueue { (queue, _) =>
+      val blockers = saturate(queue)
+      val log      = new ConcurrentLinkedQueue[String]()
+      val request  = new RecordingRequest("cancelled", InteractiveLane, log)
+      OrgQueue.requestId.withValue(Some("1")) {
+        queue.add(request)
+      }
+      queue.cancel("1")
+      blockers.foreach(_.release.countDown())
+
+      assertThrows[CancellationException](Await.result(request.promise.future, 30.seconds))
+      assert(log.isEmpty)
+    }
+  }
+
+  test("Batched requests run together as a single job") {
+    withQueue { (queue, _) =>
+      val blockers = saturate(queue)
+      val log      = new ConcurrentLinkedQueue[String]()
+      val first    = new RecordingRequest("first", InteractiveLane, log)
+      val second   = new RecordingRequest("second", BulkLane, log)
+      val after    = new RecordingRequest("after", InteractiveLane, log)
+      OrgQueue.batched {
+        queue.add(first)
+        queue.add(second)
+      }
+      queue.add(after)
+      Thread.sleep(100)
+
+      blockers.head.release.countDown()
+      Await.result(after.promise.future, 30.seconds)
+      blockers.tail.foreach(_.release.countDown())
+      assert(log.asScala.toSeq == Seq("first", "second", "after"))
+    }
+  }
+
+  test("Cancelled request in a batch is dropped") {
+    withQueue { (queue, _) =>
+      val blockers  = saturate(queue)
+      val log       = new ConcurrentLinkedQueue[String]()
+      val cancelled = new RecordingRequest("cancelled", BulkLane, log)
+      val kept      = new RecordingRequest("kept", BulkLane, log)
+      OrgQueue.batched {
+        OrgQueue.requestId.withValue(Some("1")) {
+          queue.add(cancelled)
+        }
+        queue.add(kept)
+      }
+      queue.cancel("1")
+      blockers.foreach(_.release.countDown())
+
+      assertThrows[CancellationException](Await.result(cancelled.promise.future, 30.seconds))
+      Await.result(kept.promise.future, 30.seconds)
+      assert(log.asScala.toSeq == Seq("kept"))
+    }
+  }
+
+  test("Issue changes pushed as notifications") {
+    val notifications = new ConcurrentLinkedQueue[String]()
+    OrgQueue.setNotifier(Some(notifications.add))
+    OrgQueue.setIssueNotifications(true)
+    try {
+      withQueue { (queue, root) =>
+        val foo = root.join("Foo.cls")
+        foo.write("public class Foo { Bar a; }")
+        queue.refresh(foo.toString)
+        queue.org.asInstanceOf[OrgImpl].flushNow()
+
+        val notification = ujson.read(notifications.asScala.head)
+        assert(notification("method").str == IssuesChanged.METHOD)
+        assert(notification("params")("version").num == 1)
+        val files = notification("params")("files").arr
+        assert(files.map(_("path").str) == Seq(foo.toString))
+        assert(files.head("added").arr.length == 1 && files.head("removed").arr.isEmpty)
+      }
+    } finally {
+      OrgQueue.setIssueNotifications(false)
+      OrgQueue.setNotifier(None)
+    }
+  }
+
+  test("Close fails unfinished requests & stops the dispatcher") {
+    withQueue { (queue, _) =>
+      val blocking = new BlockingRequest(readOnly = false)
+      val queued   = new MarkerRequest()
+      queue.add(blocking)
+      queue.add(queued)
+      assert(blocking.started.await(30, TimeUnit.SECONDS))
+
+      queue.close()
+      assertThrows[CancellationException](Await.result(queued.promise.future, 30.seconds))
+      val later = new MarkerRequest()
+      queue.add(later)
+      assertThrows[CancellationException](Await.result(later.promise.future, 30.seconds))
+
+      blocking.release.countDown()
+      queue.dispatcherThread.join(30000)
+      assert(!queue.dispatcherThread.isAlive)
+    }
+  }
+
+  test("Close fails batched & queued read-only requests") {
+    withQueue { (queue, _) =>
+      val blockers = saturate(queue)
+      val log      = new ConcurrentLinkedQueue[String]()
+      val queued   = new RecordingRequest("queued", InteractiveLane, log)
+      val first    = new RecordingRequest("first", BulkLane, log)
+      val second   = new RecordingRequest("second", BulkLane, log)
+      queue.add(queued)
+      Thread.sleep(100)
+
+      queue.close()
+      OrgQueue.batched {
+        queue.add(first)
+        queue.add(second)
+      }
+      blockers.foreach(_.release.countDown())
+      Seq(queued, first, second).foreach(
+        request =>
+          assertThrows[CancellationException](Await.result(request.promise.future, 30.seconds))
+      )
+      assert(log.isEmpty)
+    }
+  }
+
+  test("Running request abandoned when cancelled") {
+    withQueue { (queue, _) =>
+      val graph = new GraphRequest()
+      queue.add(graph)
+      assert(graph.started.await(30, TimeUnit.SECONDS))
+
+      graph.cancellation.cancel()
+      assertThrows[CancellationException](Await.result(graph.promise.future, 30.seconds))
+    }
+  }
+}
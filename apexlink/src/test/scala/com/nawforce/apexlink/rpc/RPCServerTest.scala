@@ -0,0 +1,139 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+
+package com.nawforce.apexlink.rpc
+
+import com.nawforce.apexlink.FileSystemHelper
+import com.nawforce.pkgforce.path.PathLike
+import org.scalatest.funsuite.AnyFunSuite
+
+import java.io.ByteArrayOutputStream
+import java.nio.channels.Channels
+import java.nio.charset.StandardCharsets
+import scala.concurrent.{Future, Promise}
+
+class RPCServerTest extends AnyFunSuite {
+
+  test("Request header parsed") {
+    val header =
+      RPCServer.MessageHeader("""{"jsonrpc":"2.0","id":12,"method":"version","params":[]}""")
+    assert(header.method.contains("version"))
+    assert(header.id.contains("12"))
+    assert(header.cancelId.isEmpty)
+  }
+
+  test("Cancel header parsed") {
+    val header = RPCServer.MessageHeader(
+      """{"jsonrpc":"2.0","method":"$/cancelRequest","params":{"id":"abc"}}"""
+    )
+    assert(header.method.contains(RPCServer.CANCEL_METHOD))
+    assert(header.id.isEmpty)
+    assert(header.cancelId.contains("\"abc\""))
+  }
+
+  test("Request header found after nested fields") {
+    val header = RPCServer.MessageHeader(
+      """{"params":[{"a":"}]\"","b":[1,{}]}], "jsonrpc":"2.0" ,"method":"version", "id" : "x\"y"}"""
+    )
+    assert(header.method.contains("version"))
+    assert(header.id.contains("\"x\\\"y\""))
+  }
+
+  test("Notification header has no id") {
+    val header = RPCServer.MessageHeader("""{"jsonrpc":"2.0","method":"version","params":{}}""")
+    assert(header.method.contains("version"))
+    assert(header.id.isEmpty)
+  }
+
+  test("Batch detected") {
+    assert(RPCServer.isBatch(" \n[{}]"))
+    assert(!RPCServer.isBatch("{\"params\":[]}"))
+    assert(!RPCServer.isBatch(""))
+  }
+
+  test("Bad header ignored") {
+    assert(RPCServer.MessageHeader("{") == RPCServer.MessageHeader(None, None, None))
+  }
+
+  test("Cancelled response") {
+    val response = ujson.read(RPCServer.cancelledResponse("12"))
+    assert(response("id").num == 12)
+    assert(response("error")("code").num == RPCServer.REQUEST_CANCELLED)
+  }
+
+  /** API where identifierForPath fails once it has been taken from the queue */
+  private class FailingAPI extends OrgAPIImpl {
+    override def identifierForPath(path: String): Future[IdentifierForPathResult] = {
+      val request = new APIRequest {
+        val promise: Promise[IdentifierForPathResult] = Promise[IdentifierForPathResult]()
+
+        override def process(queue: OrgQueue): Unit = throw new IllegalStateException(path)
+      }
+      OrgQueue.instance().add(request)
+      request.promise.future
+    }
+  }
+
+  /** Handle a message, waiting for the response to be written */
+  private def respond(message: String, server: RPCServer = new RPCServer()): String = {
+    val output = new ByteArrayOutputStream()
+    server.handleMessage(message, new MessageWriter(Channels.newChannel(output)))
+    val timeout = System.currentTimeMillis() + 30000
+    while (output.size() == 0 && System.currentTimeMillis() < timeout) Thread.sleep(10)
+    val response = new String(output.toByteArray, StandardCharsets.UTF_8)
+    assert(response.endsWith("\u0000"))
+    response.dropRight(1)
+  }
+
+  test("Batch responses combined") {
+    val responses = ujson
+      .read(respond("""[{"jsonrpc":"2.0","id":"1","method":"version","params":{}},
+        | {"jsonrpc":"2.0","id":"2","method":"version","params":{}}]""".stripMargin))
+      .arr
+    assert(responses.map(_("id").str) == Seq("1", "2"))
+    assert(responses.forall(_("result").str.nonEmpty))
+  }
+
+  test("Empty batch is an invalid request") {
+    val response = ujson.read(respond("[]"))
+    assert(response("error")("code").num == -32600)
+  }
+
+  test("Batch responses returned when a queued request fails") {
+    FileSystemHelper.runTempDir(Map("Foo.cls" -> "public class Foo {}")) { root: PathLike =>
+      val queue = OrgQueue.open(root.toString)
+      try {
+        val responses = ujson
+          .read(
+            respond(
+              s"""[{"jsonrpc":"2.0","id":"1","method":"getIssues","params":[false,10]},
+                 | {"jsonrpc":"2.0","id":"2","method":"identifierForPath","params":["Bad.cls"]},
+                 | {"jsonrpc":"2.0","id":"3","method":"getTypeIdentifiers","params":[true]},
+                 | {"jsonrpc":"2.0","id":"4","method":"version","params":{}}]""".stripMargin,
+              new RPCServer(new FailingAPI())
+            )
+          )
+          .arr
+        assert(responses.map(_("id").str) == Seq("1", "2", "3", "4"))
+        assert(responses(0)("result")("issues").arr.isEmpty)
+        assert(responses(1)("error")("code").num == RPCServer.INTERNAL_ERROR)
+        assert(responses(1)("error")("message").str.contains("Bad.cls"))
+        assert(responses(2)("result")("identifiers").arr.size == 1)
+        assert(responses(3)("result").str.nonEmpty)
+      } finally {
+        queue.close()
+      }
+    }
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+
+package com.nawforce.apexlink.rpc
+
+import org.scalatest.funsuite.AnyFunSuite
+
+class ResultCursorsTest extends AnyFunSuite {
+
+  test("Small result returned without cursor") {
+    val cursors = new ResultCursors()
+    assert(cursors.page(PageRequest(3, None), 0)(Iterator(1, 2, 3)).map(_._2) == Right(None))
+    assert(cursors.size == 0)
+  }
+
+  test("Large result returned in pages") {
+    val cursors = new ResultCursors()
+    val first   = cursors.page(PageRequest(2, None), 0)(Iterator(1, 2, 3, 4, 5)).toOption.get
+    assert(first._1 sameElements Array(1, 2))
+    val second = cursors.page(PageRequest(2, first._2), 0)(Iterator[Int]()).toOption.get
+    assert(second._1 sameElements Array(3, 4))
+    assert(second._2 == first._2)
+    val third = cursors.page(PageRequest(2, first._2), 0)(Iterator[Int]()).toOption.get
+    assert(third._1 sameElements Array(5))
+    assert(third._2.isEmpty)
+    assert(cursors.size == 0)
+  }
+
+  test("Result evaluated once & produced a page at a time") {
+    val cursors   = new ResultCursors()
+    var produced  = 0
+    var evaluated = 0
+    def values: Iterator[Int] = {
+      evaluated += 1
+      (1 to 100).iterator.map(i => { produced += 1; i })
+    }
+
+    val first = cursors.page(PageRequest(10, None), 0)(values).toOption.get
+    assert(produced <= 11)
+    cursors.page(PageRequest(10, first._2), 0)(values)
+    assert(evaluated == 1)
+    assert(produced <= 21)
+  }
+
+  test("Unknown cursor is an error") {
+    val cursors = new ResultCursors()
+    assert(cursors.page(PageRequest(2, Some(1)), 0)(Iterator(1, 2, 3)).isLeft)
+  }
+
+  test("Cursor for other result type is an error") {
+    val cursors = new ResultCursors()
+    val first   = cursors.page(PageRequest(1, None), 0)(Iterator(1, 2)).toOption.get
+    assert(cursors.page(PageRequest(1, first._2), 0)(Iterator[String]()).isLeft)
+  }
+
+  test("Cursor for other version is an error") {
+    val cursors = new ResultCursors()
+    val first   = cursors.page(PageRequest(1, None), 0)(Iterator(1, 2)).toOption.get
+    assert(cursors.page(PageRequest(1, first._2), 1)(Iterator[Int]()).isLeft)
+    assert(cursors.size == 0)
+  }
+
+  test("Oldest cursors expire") {
+    val cursors = new ResultCursors(2)
+    val pages =
+      (1 to 3).map(_ => cursors.page(PageRequest(1, None), 0)(Iterator(1, 2)).toOption.get)
+    assert(cursors.size == 2)
+    assert(cursors.page(PageRequest(1, pages.head._2), 0)(Iterator[Int]()).isLeft)
+    assert(cursors.page(PageRequest(1, pages.last._2), 0)(Iterator[Int]()).isRight)
+  }
+
+  test("Idle cursors expire") {
+    val cursors = new ResultCursors(idleTimeout = 0)
+    val first   = cursors.page(PageRequest(1, None), 0)(Iterator(1, 2)).toOption.get
+    Thread.sleep(10)
+    assert(cursors.page(PageRequest(1, first._2), 0)(Iterator[Int]()).isLeft)
+    assert(cursors.size == 0)
+  }
+}
@@ -33,6 +33,11 @@ class CodeParser(val source: Source) {
     parse(parser => parser.compilationUnit())
   }
 
+  /** Outline parsing is not supported on JS, this performs a full parse */
+  def parseClassOutline(): IssuesAnd[ApexParser.CompilationUnitContext] = {
+    parseClass()
+  }
+
   def parseTrigger(): IssuesAnd[ApexParser.TriggerUnitContext] = {
     parse(parser => parser.triggerUnit())
   }
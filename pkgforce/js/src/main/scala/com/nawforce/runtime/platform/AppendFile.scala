@@ -0,0 +1,120 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+package com.nawforce.runtime.platform
+
+import com.nawforce.pkgforce.path.PathLike
+import io.scalajs.nodejs.buffer.Buffer
+import io.scalajs.nodejs.fs.Fs
+
+import java.io.{EOFException, IOException}
+import scala.scalajs.js
+import scala.scalajs.js.JSConverters._
+
+/** Append-only file, node has no positional reads here so the contents are read once into a Buffer which is then
+  * extended as appends are made. There is a single thread so there is no concurrent use to manage.
+  */
+final class AppendFile private (path: String, private var contents: Buffer) {
+
+  private var closed = false
+
+  /** Current length of the file */
+  def length: Long = contents.length.toLong
+
+  /** Read a big-endian Int at an offset, throws an IOException if it can not be read */
+  def readInt(offset: Long): Int = {
+    checkRead(offset, 4)
+    contents.readInt32BE(offset.toInt)
+  }
+
+  /** Read a block of bytes from an offset, throws an IOException if it can not be read */
+  def read(offset: Long, length: Int): Array[Byte] = {
+    checkRead(offset, length)
+    val data = new Array[Byte](length)
+    var i    = 0
+    while (i < length) {
+      data(i) = contents(offset.toInt + i).toByte
+      i += 1
+    }
+    data
+  }
+
+  /** Append data to the end of the file, returns the offset it was written at or an error message */
+  def append(data: Array[Byte]): Either[String, Long] = {
+    try {
+      val offset = length
+      val buffer = Buffer.from(data.map(_.toInt).toJSArray)
+      Fs.appendFileSync(path, buffer)
+      contents = Buffer.concat(js.Array(contents, buffer))
+      Right(offset)
+    } catch {
+      case ex: js.JavaScriptException => Left(ex.getMessage())
+    }
+  }
+
+  /** Truncate the file to the passed length, returns an error message on failure */
+  def truncate(length: Long): Option[String] = {
+    try {
+      Fs.truncateSync(path, length.toInt)
+      contents = contents.slice(0, length.toInt)
+      None
+    } catch {
+      case ex: js.JavaScriptException => Some(ex.getMessage())
+    }
+  }
+
+  /** Replacements are only made by this process so the file is always current */
+  def isCurrent: Boolean = true
+
+  /** Close the file, later reads will fail with an IOException */
+  def close(): Unit = {
+    closed = true
+  }
+
+  private def checkRead(offset: Long, length: Int): Unit = {
+    if (closed)
+      throw new IOException(s"$path is closed")
+    if (offset + length > contents.length)
+      throw new EOFException(s"Read to ${offset + length} beyond end of $path")
+  }
+}
+
+object AppendFile {
+
+  /** Open a file, it will be created if it does not already exist */
+  def open(path: PathLike): Either[String, AppendFile] = {
+    try {
+      val file = path.toString
+      if (!path.exists)
+        Fs.writeFileSync(file, "")
+      Right(new AppendFile(file, Fs.readFileSync(file)))
+    } catch {
+      case ex: js.JavaScriptException => Left(ex.getMessage())
+    }
+  }
+
+  /** Replace the file at path with one holding the passed data, returns the replacement file or an error message */
+  def replace(path: PathLike, chunks: Iterator[Array[Byte]]): Either[String, AppendFile] = {
+    try {
+      val file = path.toString
+      val temp = file + ".tmp"
+      val buffer =
+        Buffer.concat(chunks.map(chunk => Buffer.from(chunk.map(_.toInt).toJSArray)).toJSArray)
+      Fs.writeFileSync(temp, buffer)
+      Fs.renameSync(temp, file)
+      Right(new AppendFile(file, buffer))
+    } catch {
+      case ex: js.JavaScriptException => Left(ex.getMessage())
+    }
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+package com.nawforce.runtime.platform
+
+import com.nawforce.pkgforce.path.PathLike
+
+import scala.collection.mutable
+
+/** Directory tree scanner, node has no tree walking support so this recurses using directory listings. */
+object DirectoryScanner {
+
+  /** Find the files under a directory. Files are returned top-down, the files in a directory appear before those of
+    * its sub-directories, but are otherwise in directory listing order.
+    */
+  def scan(
+    root: PathLike,
+    includeDirectory: PathLike => Boolean,
+    includeFile: PathLike => Boolean
+  ): Array[PathLike] = {
+    val files = mutable.ArrayBuffer[PathLike]()
+
+    def collect(path: PathLike): Unit = {
+      if (includeDirectory(path)) {
+        val entries = path.splitDirectoryEntries()
+        files.addAll(entries._1.filter(includeFile))
+        entries._2.foreach(collect)
+      }
+    }
+
+    if (root.isDirectory)
+      collect(root)
+    else if (includeFile(root))
+      files.append(root)
+    files.toArray
+  }
+}
@@ -0,0 +1,26 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+package com.nawforce.runtime.platform
+
+import com.nawforce.pkgforce.path.PathLike
+
+/** Exclusive lock on a file used to coordinate processes sharing a directory, node has no file locking so the
+  * operation is performed without one.
+  */
+object LockFile {
+
+  def withLock[T](path: PathLike)(op: => T): T = {
+    op
+  }
+}
@@ -0,0 +1,25 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+package com.nawforce.runtime.platform
+
+import scala.collection.compat.immutable.ArraySeq
+
+/** Data parallel operations, node has no threads so these are performed sequentially. */
+object Parallel {
+
+  /** Map over values, the results are returned in the same order as the values */
+  def map[T, R](values: ArraySeq[T])(op: T => R): ArraySeq[R] = {
+    values.map(op)
+  }
+}
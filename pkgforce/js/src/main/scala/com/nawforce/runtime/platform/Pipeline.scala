@@ -0,0 +1,31 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+package com.nawforce.runtime.platform
+
+/** Runs iterators ahead of their consumer, node has no threads so the source is simply consumed lazily. */
+object Pipeline {
+
+  /** Start producing from source, returning an iterator over the produced values */
+  def readAhead[T](name: String, capacity: Int)(
+    source: () => Iterator[T]
+  ): Iterator[T] with AutoCloseable = {
+    new Iterator[T] with AutoCloseable {
+      private lazy val values = source()
+
+      override def hasNext: Boolean = values.hasNext
+      override def next(): T        = values.next()
+      override def close(): Unit    = ()
+    }
+  }
+}
@@ -26,9 +26,11 @@ object Scan {
     println(
       issuesAndWs.value
         .map(ws => {
-          val eventCount = ws.events.size
-          val events     = System.currentTimeMillis()
-          s"Scanned $eventCount events, disk scan took ${scanned - start}ms, event loading took ${events - scanned}ms"
+          val documentCount = ws.indexes.values.map(_.value.size).sum
+          val eventCount    = ws.events.size
+          val events        = System.currentTimeMillis()
+          s"Indexed $documentCount documents in ${ws.indexes.size} module layers, disk scan took ${scanned - start}ms\n" +
+            s"Scanned $eventCount events, event loading took ${events - scanned}ms"
         })
         .getOrElse({
           "Workspace failed to load"
@@ -13,14 +13,17 @@
  */
 package com.nawforce.runtime.parsers
 
-import com.nawforce.apexparser.{ApexLexer, ApexParser, CaseInsensitiveInputStream}
-import com.nawforce.pkgforce.diagnostics.IssuesAnd
+import com.nawforce.apexparser.{ApexLexer, ApexParser}
+import com.nawforce.pkgforce.diagnostics.{IssuesAnd, LoggerOps}
 import com.nawforce.pkgforce.path.{PathLike, PathLocation}
 import com.nawforce.runtime.parsers.CodeParser.ParserRuleContext
-import org.antlr.v4.runtime.{CharStreams, CommonTokenStream}
+import com.nawforce.runtime.platform.Path
+import org.antlr.v4.runtime.atn.PredictionMode
+import org.antlr.v4.runtime.misc.ParseCancellationException
+import org.antlr.v4.runtime.{BailErrorStrategy, CharStream, CommonTokenStream, DefaultErrorStrategy}
 
-import java.io.ByteArrayInputStream
 import java.util
+import java.util.concurrent.atomic.{AtomicBoolean, AtomicInteger, AtomicLong}
 import scala.collection.compat.immutable.ArraySeq
 import scala.jdk.CollectionConverters._
 import scala.reflect.ClassTag
@@ -39,6 +42,15 @@ class CodeParser(val source: Source) {
     parseReturningParser(parser => parser.compilationUnit())
   }
 
+  /** Parse only the declarations of a class, code blocks are parsed as empty so issues within them are not reported.
+    * The result is suitable for building summaries, see ApexNode.
+    */
+  def parseClassOutline(): IssuesAnd[ApexParser.CompilationUnitContext] = {
+    val parser = new ApexParser(new CommonTokenStream(new OutlineTokenSource(new ApexLexer(cis))))
+    val result = parseWith(parser, (parser: ApexParser) => parser.compilationUnit())
+    IssuesAnd(result.issues, result.value._2)
+  }
+
   def parseTriggerReturningParser(): IssuesAnd[(ApexParser, ApexParser.TriggerUnitContext)] = {
     parseReturningParser(parser => parser.triggerUnit())
   }
@@ -78,24 +90,67 @@ class CodeParser(val source: Source) {
     source.extractSource(context)
   }
 
+  /** Parse using this thread's pooled lexer & parser, these are reset for each use so must not be retained. If the
+    * pooled instances are already in use new ones are created.
+    */
   def parse[T](parse: ApexParser => T): IssuesAnd[T] = {
-    val result = parseReturningParser[T](parse)
-    IssuesAnd(result.issues, result.value._2)
+    val pool = CodeParser.pools.get()
+    pool.acquire(cis) match {
+      case Some(parser) =>
+        try {
+          val result = parseWith(parser, parse)
+          IssuesAnd(result.issues, result.value._2)
+        } finally {
+          lastTokenStream = None
+          pool.release()
+        }
+      case None =>
+        val result = parseReturningParser[T](parse)
+        IssuesAnd(result.issues, result.value._2)
+    }
   }
 
+  /** Parse in two stages, first using the faster SLL prediction mode which bails out on the first error. Only if
+    * that fails is the parse repeated with full LL prediction & error recovery, so reported issues are the same as
+    * for a single LL parse. A new lexer & parser are used so the returned parser may be retained.
+    */
   def parseReturningParser[T](parse: ApexParser => T): IssuesAnd[(ApexParser, T)] = {
-    CodeParser.autoClearCache()
+    parseWith(new ApexParser(new CommonTokenStream(new ApexLexer(cis))), parse)
+  }
+
+  private def parseWith[T](
+    parser: ApexParser,
+    parse: ApexParser => T
+  ): IssuesAnd[(ApexParser, T)] = {
+    CodeParser.checkCaches()
 
     lastTokenStream = None
-    val tokenStream = new CommonTokenStream(new ApexLexer(cis))
+    val tokenStream = parser.getInputStream.asInstanceOf[CommonTokenStream]
     tokenStream.fill()
 
     val listener = new CollectingErrorListener(source.path)
-    val parser   = new ApexParser(tokenStream)
     parser.removeErrorListeners()
+    parser.getInterpreter.setPredictionMode(PredictionMode.SLL)
+    parser.setErrorHandler(new BailErrorStrategy())
+
+    val sllResult =
+      try {
+        Some(parse(parser))
+      } catch {
+        case _: ParseCancellationException => None
+      }
+
+    // Restore the defaults, the parser may be used further by callers
+    parser.getInterpreter.setPredictionMode(PredictionMode.LL)
+    parser.setErrorHandler(new DefaultErrorStrategy())
     parser.addErrorListener(listener)
 
-    val result = parse(parser)
+    val result = sllResult.getOrElse {
+      CodeParser.fallbacks.incrementAndGet()
+      parser.reset()
+      parse(parser)
+    }
+
     lastTokenStream = Some(tokenStream)
     IssuesAnd(listener.issues, (parser, result))
   }
@@ -105,30 +160,172 @@ object CodeParser {
   type ParserRuleContext = org.antlr.v4.runtime.ParserRuleContext
   type TerminalNode      = org.antlr.v4.runtime.tree.TerminalNode
 
-  private var useCount = 0
+  /** Default limit on the number of DFA states held by the lexer & parser caches */
+  final val DEFAULT_CACHE_LIMIT: Int = 50000
+
+  /** Number of parses between checks of the cache size */
+  final val CACHE_CHECK_INTERVAL: Int = 100
+
+  private val parseCount                     = new AtomicInteger()
+  private val fallbacks                      = new AtomicLong()
+  private val warming                        = new AtomicBoolean()
+  @volatile private var cacheLimit: Int      = DEFAULT_CACHE_LIMIT
+  @volatile private var cacheRewarm: Boolean = false
+
+  // Instances used to reach the DFA caches, these are shared by all lexers & parsers
+  private lazy val cacheLexer  = new ApexLexer(new InsensitiveASCIIStream(Array[Byte](), 0, 0))
+  private lazy val cacheParser = new ApexParser(new CommonTokenStream(cacheLexer))
+
+  // Reusable lexer & parser for each thread
+  private val pools = ThreadLocal.withInitial[ParserPool](() => new ParserPool())
+
+  /* A lexer, token stream & parser that can be reset for each parse, avoiding re-construction. */
+  private final class ParserPool {
+    private val empty       = new InsensitiveASCIIStream(Array[Byte](), 0, 0)
+    private val lexer       = new ApexLexer(empty)
+    private val tokenStream = new CommonTokenStream(lexer)
+    private val parser      = new ApexParser(tokenStream)
+    private var inUse       = false
+
+    /** Obtain the parser reset to read from the passed stream, None if it is already in use. */
+    def acquire(stream: CharStream): Option[ApexParser] = {
+      if (inUse) {
+        None
+      } else {
+        inUse = true
+        reset(stream)
+        Some(parser)
+      }
+    }
+
+    /** Return the parser, the input & tokens are released so they can be collected. */
+    def release(): Unit = {
+      reset(empty)
+      inUse = false
+    }
+
+    private def reset(stream: CharStream): Unit = {
+      lexer.setInputStream(stream)
+      tokenStream.setTokenSource(lexer)
+      parser.setTokenStream(tokenStream)
+    }
+  }
 
   def apply(path: PathLike, code: SourceData): CodeParser = {
     new CodeParser(Source(path, code, 0, 0, None))
   }
 
-  private def autoClearCache(): Unit = {
-    useCount += 1
-    if (useCount % 500 == 0) {
+  private def checkCaches(): Unit = {
+    if (parseCount.incrementAndGet() % CACHE_CHECK_INTERVAL == 0) {
+      trimCaches()
+    }
+  }
+
+  /** Number of parses that have had to fall back from SLL to LL prediction */
+  def fallbackCount: Long = fallbacks.get()
+
+  /** Maximum number of DFA states held before the caches are cleared */
+  def getCacheLimit: Int = cacheLimit
+
+  /** Update the cache limit, returns the prior value */
+  def setCacheLimit(states: Int): Int = {
+    val current = cacheLimit
+    cacheLimit = Math.max(0, states)
+    current
+  }
+
+  /** Are the caches re-warmed in the background after being cleared */
+  def getCacheRewarm: Boolean = cacheRewarm
+
+  /** Update the re-warm flag, returns the prior value */
+  def setCacheRewarm(enable: Boolean): Boolean = {
+    val current = cacheRewarm
+    cacheRewarm = enable
+    current
+  }
+
+  /** Number of DFA states currently held in the lexer & parser caches. The states, and the ATN configurations
+    * they retain, account for nearly all of the cache heap usage.
+    */
+  def cacheStates: Int = {
+    (cacheLexer.getInterpreter.decisionToDFA ++ cacheParser.getInterpreter.decisionToDFA)
+      .map(_.states.size())
+      .sum
+  }
+
+  /** Clear the caches if they hold more than the cache limit states, returns true if they were cleared. */
+  def trimCaches(): Boolean = {
+    val states = cacheStates
+    if (states > cacheLimit) {
+      LoggerOps.debug(s"Clearing parser caches holding $states DFA states")
       clearCaches()
+      true
+    } else {
+      false
     }
   }
 
+  /** Unconditionally clear the caches, they are re-warmed if enabled. */
   def clearCaches(): Unit = {
-    val lexer = new ApexLexer(
-      new CaseInsensitiveInputStream(
-        CharStreams.fromStream(new ByteArrayInputStream(Array[Byte]()))
-      )
-    )
-    val parser = new ApexParser(new CommonTokenStream(lexer))
-    lexer.clearCache()
-    parser.clearCache()
+    cacheLexer.clearCache()
+    cacheParser.clearCache()
+    if (cacheRewarm)
+      rewarmCaches()
   }
 
+  /* Parse a small sample of typical Apex on a background thread so that common decisions are back in the caches
+   * before interactive parsing needs them. */
+  private def rewarmCaches(): Unit = {
+    if (warming.compareAndSet(false, true)) {
+      val t = new Thread(() => {
+        try {
+          LoggerOps.debugTime("Re-warmed parser caches") {
+            CodeParser(Path("Warm.cls"), SourceData(WARM_CLASS)).parseClass()
+          }
+        } finally {
+          warming.set(false)
+        }
+      })
+      t.setDaemon(true)
+      t.start()
+    }
+  }
+
+  private val WARM_CLASS =
+    """public with sharing class Warm extends Base implements Comparable {
+      |  private static final Map<Id, List<Account>> cache = new Map<Id, List<Account>>();
+      |  @TestVisible private String name { get; set; }
+      |  public enum Mode { READ, WRITE }
+      |
+      |  public Warm(String name) { this.name = name; }
+      |
+      |  public override Integer compareTo(Object other) {
+      |    return name.compareTo(((Warm) other).name);
+      |  }
+      |
+      |  public List<Account> find(Set<Id> ids, Integer max) {
+      |    List<Account> results = [SELECT Id, Name, (SELECT Id FROM Contacts) FROM Account
+      |                             WHERE Id IN :ids AND Name != null ORDER BY Name LIMIT :max];
+      |    for (Account a : results) {
+      |      if (a.Name.startsWith('A') && !cache.containsKey(a.Id)) {
+      |        cache.put(a.Id, new List<Account>{ a });
+      |      } else if (a.Name == null || results.size() > 10) {
+      |        continue;
+      |      }
+      |    }
+      |    try {
+      |      update results;
+      |    } catch (DmlException ex) {
+      |      System.debug(LoggingLevel.ERROR, 'Failed: ' + ex.getMessage());
+      |      throw new AuraHandledException(ex.getMessage());
+      |    }
+      |    Integer count = 0;
+      |    while (count < max) { count += 1; }
+      |    return results.isEmpty() ? null : results;
+      |  }
+      |}
+      |""".stripMargin
+
   // Helper for JS Portability
   def getText(context: ParserRuleContext): String = {
     Option(context).map(_.getText).getOrElse("")
@@ -0,0 +1,71 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+package com.nawforce.runtime.parsers
+
+import org.antlr.v4.runtime.misc.Interval
+import org.antlr.v4.runtime.{CharStream, IntStream}
+
+import java.nio.charset.StandardCharsets
+
+/** Case insensitive CharStream for ASCII only source. This reads directly from the source byte array, avoiding the
+  * decode & copy needed for CharStreams.fromStream. LA() returns lower case characters via a table lookup while
+  * getText() returns the original text.
+  */
+final class InsensitiveASCIIStream(data: Array[Byte], offset: Int, length: Int) extends CharStream {
+  private var position = 0
+
+  override def getText(interval: Interval): String = {
+    val start = Math.min(interval.a, length)
+    val count = Math.min(interval.b - interval.a + 1, length - start)
+    if (count <= 0)
+      ""
+    else
+      new String(data, offset + start, count, StandardCharsets.ISO_8859_1)
+  }
+
+  override def consume(): Unit = {
+    if (position >= length)
+      throw new IllegalStateException("cannot consume EOF")
+    position += 1
+  }
+
+  override def LA(i: Int): Int = {
+    if (i == 0)
+      return 0
+
+    val at = if (i > 0) position + i - 1 else position + i
+    if (at < 0 || at >= length)
+      IntStream.EOF
+    else
+      InsensitiveASCIIStream.lowerCase(data(offset + at))
+  }
+
+  override def mark(): Int = -1
+
+  override def release(marker: Int): Unit = ()
+
+  override def index(): Int = position
+
+  override def seek(index: Int): Unit = position = index
+
+  override def size(): Int = length
+
+  override def getSourceName: String = IntStream.UNKNOWN_SOURCE_NAME
+}
+
+object InsensitiveASCIIStream {
+  private val lowerCaseTable: Array[Int] = Array.tabulate(128)(c => Character.toLowerCase(c))
+
+  private def lowerCase(b: Byte): Int = lowerCaseTable(b)
+}
@@ -0,0 +1,107 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+package com.nawforce.runtime.parsers
+
+import com.nawforce.apexparser.ApexLexer
+import org.antlr.v4.runtime.{CharStream, Token, TokenFactory, TokenSource}
+
+import scala.collection.mutable
+
+/** TokenSource that removes the contents of code blocks so that only declarations are parsed. Blocks are identified
+  * by brace matching, bodies of methods, constructors, initializers & property accessors are reduced to '{}' while
+  * type bodies, property blocks & field initializers are passed through unchanged.
+  */
+final class OutlineTokenSource(lexer: ApexLexer) extends TokenSource {
+  private val braces         = mutable.Stack[Boolean]() // true for a type body
+  private var sawTypeKeyword = false
+  private var lastType       = Token.INVALID_TYPE
+  private var pending: Token = _
+
+  override def nextToken(): Token = {
+    if (pending != null) {
+      val token = pending
+      pending = null
+      lastType = token.getType
+      return token
+    }
+
+    val token = lexer.nextToken()
+    if (token.getChannel == Token.DEFAULT_CHANNEL) {
+      token.getType match {
+        case ApexLexer.CLASS | ApexLexer.INTERFACE | ApexLexer.ENUM =>
+          sawTypeKeyword = true
+        case ApexLexer.LBRACE if isBody =>
+          pending = skipBody()
+        case ApexLexer.LBRACE =>
+          braces.push(sawTypeKeyword)
+          sawTypeKeyword = false
+        case ApexLexer.RBRACE =>
+          if (braces.nonEmpty) braces.pop()
+          sawTypeKeyword = false
+        case ApexLexer.SEMI =>
+          sawTypeKeyword = false
+        case _ => ()
+      }
+      lastType = token.getType
+    }
+    token
+  }
+
+  /* Decide if a '{' opens a code block, this is only possible directly within a type body or property block. */
+  private def isBody: Boolean = {
+    if (sawTypeKeyword || braces.isEmpty) {
+      false
+    } else if (braces.top) {
+      lastType match {
+        case ApexLexer.RPAREN | ApexLexer.STATIC | ApexLexer.LBRACE | ApexLexer.RBRACE |
+            ApexLexer.SEMI =>
+          true
+        case _ => false
+      }
+    } else {
+      lastType == ApexLexer.GET || lastType == ApexLexer.SET
+    }
+  }
+
+  /* Discard tokens up to the '}' matching an already returned '{', returns the '}' or EOF if unmatched. */
+  private def skipBody(): Token = {
+    var depth = 1
+    var token = lexer.nextToken()
+    while (token.getType != Token.EOF) {
+      if (token.getChannel == Token.DEFAULT_CHANNEL) {
+        if (token.getType == ApexLexer.LBRACE) {
+          depth += 1
+        } else if (token.getType == ApexLexer.RBRACE) {
+          depth -= 1
+          if (depth == 0)
+            return token
+        }
+      }
+      token = lexer.nextToken()
+    }
+    token
+  }
+
+  override def getLine: Int = lexer.getLine
+
+  override def getCharPositionInLine: Int = lexer.getCharPositionInLine
+
+  override def getInputStream: CharStream = lexer.getInputStream
+
+  override def getSourceName: String = lexer.getSourceName
+
+  override def setTokenFactory(factory: TokenFactory[_]): Unit = lexer.setTokenFactory(factory)
+
+  override def getTokenFactory: TokenFactory[_] = lexer.getTokenFactory
+}
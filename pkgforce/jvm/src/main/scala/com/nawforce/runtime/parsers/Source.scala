@@ -13,7 +13,6 @@
  */
 package com.nawforce.runtime.parsers
 
-import com.nawforce.apexparser.CaseInsensitiveInputStream
 import com.nawforce.pkgforce.path.{Location, PathLike, PathLocation, Positionable}
 import com.nawforce.runtime.SourceBlob
 import com.nawforce.runtime.parsers.CodeParser.ParserRuleContext
@@ -44,7 +43,7 @@ case class Source(
     code.asStream
   }
 
-  def asInsensitiveStream: CaseInsensitiveInputStream = {
+  def asInsensitiveStream: CharStream = {
     code.asInsensitiveStream
   }
 
@@ -52,10 +52,18 @@ final case class SourceData(
     CharStreams.fromStream(new ByteArrayInputStream(source, offset, length), StandardCharsets.UTF_8)
   }
 
-  def asInsensitiveStream: CaseInsensitiveInputStream = {
-    new CaseInsensitiveInputStream(
-      CharStreams.fromStream(new ByteArrayInputStream(source, offset, length))
-    )
+  /** Case insensitive stream for lexing, ASCII source is read in place, otherwise it is decoded first. */
+  def asInsensitiveStream: CharStream = {
+    if (isASCII.isEmpty)
+      isASCII = Some(UTF8Decode.isASCII(source, offset, length))
+
+    if (isASCII.contains(true)) {
+      new InsensitiveASCIIStream(source, offset, length)
+    } else {
+      new CaseInsensitiveInputStream(
+        CharStreams.fromStream(new ByteArrayInputStream(source, offset, length))
+      )
+    }
   }
 
   def asUTF8: Array[Byte] = {
@@ -0,0 +1,154 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+package com.nawforce.runtime.platform
+
+import com.nawforce.pkgforce.path.PathLike
+
+import java.io.{EOFException, IOException}
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.attribute.BasicFileAttributes
+import java.nio.file.{Files, StandardCopyOption, StandardOpenOption}
+
+/** Append-only file that may be shared between processes. Reads are positional so they can be made concurrently
+  * with each other and with appends. Writers should hold a LockFile so that processes sharing the file do not
+  * interleave writes. Whole file replacement is via an atomic rename so other processes with the file open continue
+  * to see the old contents until they notice it is no longer current.
+  */
+final class AppendFile private (path: java.nio.file.Path, channel: FileChannel) {
+
+  // Identity of the file opened, used to detect replacement by another process
+  private val fileKey = AppendFile.fileKey(path)
+
+  /** Current length of the file */
+  def length: Long = channel.size()
+
+  /** Read a big-endian Int at an offset, throws an IOException if it can not be read */
+  def readInt(offset: Long): Int = ByteBuffer.wrap(read(offset, 4)).getInt()
+
+  /** Read a block of bytes from an offset, throws an IOException if it can not be read */
+  def read(offset: Long, length: Int): Array[Byte] = {
+    val data   = new Array[Byte](length)
+    val buffer = ByteBuffer.wrap(data)
+    while (buffer.hasRemaining) {
+      if (channel.read(buffer, offset + buffer.position()) < 0)
+        throw new EOFException(s"Read to ${offset + length} beyond end of $path")
+    }
+    data
+  }
+
+  /** Append data to the end of the file, returns the offset it was written at or an error message */
+  def append(data: Array[Byte]): Either[String, Long] = {
+    try {
+      val offset = channel.size()
+      val buffer = ByteBuffer.wrap(data)
+      while (buffer.hasRemaining) channel.write(buffer, offset + buffer.position())
+      Right(offset)
+    } catch {
+      case ex: IOException => Left(ex.toString)
+    }
+  }
+
+  /** Truncate the file to the passed length if it is longer, returns an error message on failure */
+  def truncate(length: Long): Option[String] = {
+    try {
+      channel.truncate(length)
+      None
+    } catch {
+      case ex: IOException => Some(ex.toString)
+    }
+  }
+
+  /** Test if this is still the file at its path, it will not be if the file has been replaced or deleted */
+  def isCurrent: Boolean = fileKey.isEmpty || AppendFile.fileKey(path) == fileKey
+
+  /** Close the file, later reads will fail with an IOException */
+  def close(): Unit = {
+    try {
+      channel.close()
+    } catch {
+      case _: IOException => ()
+    }
+  }
+}
+
+object AppendFile {
+
+  /** Open a file, it will be created if it does not already exist */
+  def open(path: PathLike): Either[String, AppendFile] = {
+    open(path.native.asInstanceOf[java.nio.file.Path])
+  }
+
+  /** Replace the file at path with one holding the passed data, each chunk is written as it is obtained so the new
+    * contents need not be held in memory. Returns the replacement file opened or an error message.
+    */
+  def replace(path: PathLike, chunks: Iterator[Array[Byte]]): Either[String, AppendFile] = {
+    val nativePath = path.native.asInstanceOf[java.nio.file.Path]
+    val temp       = nativePath.resolveSibling(s"${nativePath.getFileName}.tmp")
+    try {
+      val channel = FileChannel.open(
+        temp,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.WRITE
+      )
+      try {
+        chunks.foreach(chunk => {
+          val buffer = ByteBuffer.wrap(chunk)
+          while (buffer.hasRemaining) channel.write(buffer)
+        })
+      } finally {
+        channel.close()
+      }
+      Files.move(
+        temp,
+        nativePath,
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE
+      )
+      open(nativePath)
+    } catch {
+      case ex: IOException =>
+        Files.deleteIfExists(temp)
+        Left(ex.toString)
+    }
+  }
+
+  private def open(path: java.nio.file.Path): Either[String, AppendFile] = {
+    try {
+      Right(
+        new AppendFile(
+          path,
+          FileChannel.open(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE
+          )
+        )
+      )
+    } catch {
+      case ex: IOException                   => Left(ex.toString)
+      case ex: UnsupportedOperationException => Left(ex.toString)
+    }
+  }
+
+  private def fileKey(path: java.nio.file.Path): Option[AnyRef] = {
+    try {
+      Option(Files.readAttributes(path, classOf[BasicFileAttributes]).fileKey())
+    } catch {
+      case _: IOException => None
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+package com.nawforce.runtime.platform
+
+import com.nawforce.pkgforce.diagnostics.LoggerOps
+import com.nawforce.pkgforce.path.PathLike
+
+import java.io.IOException
+import java.nio.file.{FileVisitOption, FileVisitResult, Files, SimpleFileVisitor}
+import java.nio.file.attribute.BasicFileAttributes
+import scala.collection.mutable
+
+/** Directory tree scanner built on Files.walkFileTree. Directories that are not included are pruned before they are
+  * read and file types are taken from the attributes provided during the walk, so each entry is only examined once.
+  */
+object DirectoryScanner {
+
+  private class Entries {
+    val files: mutable.ArrayBuffer[PathLike]                 = mutable.ArrayBuffer()
+    val directories: mutable.ArrayBuffer[java.nio.file.Path] = mutable.ArrayBuffer()
+  }
+
+  /** Find the files under a directory. Files are returned top-down, the files in a directory appear before those of
+    * its sub-directories, but are otherwise in directory listing order.
+    */
+  def scan(
+    root: PathLike,
+    includeDirectory: PathLike => Boolean,
+    includeFile: PathLike => Boolean
+  ): Array[PathLike] = {
+    val rootPath = root.native.asInstanceOf[java.nio.file.Path]
+    if (!Files.isDirectory(rootPath))
+      return if (includeFile(root)) Array(root) else Array()
+
+    val entries = mutable.HashMap[java.nio.file.Path, Entries]()
+
+    val visitor = new SimpleFileVisitor[java.nio.file.Path] {
+      override def preVisitDirectory(
+        dir: java.nio.file.Path,
+        attrs: BasicFileAttributes
+      ): FileVisitResult = {
+        if (includeDirectory(new Path(dir))) {
+          entries.get(dir.getParent).foreach(_.directories.append(dir))
+          entries.put(dir, new Entries)
+          FileVisitResult.CONTINUE
+        } else {
+          FileVisitResult.SKIP_SUBTREE
+        }
+      }
+
+      override def visitFile(
+        file: java.nio.file.Path,
+        attrs: BasicFileAttributes
+      ): FileVisitResult = {
+        if (attrs.isRegularFile) {
+          val path = new Path(file)
+          if (includeFile(path))
+            entries.get(file.getParent).foreach(_.files.append(path))
+        }
+        FileVisitResult.CONTINUE
+      }
+
+      override def visitFileFailed(file: java.nio.file.Path, ex: IOException): FileVisitResult = {
+        FileVisitResult.CONTINUE
+      }
+    }
+
+    try {
+      Files.walkFileTree(
+        rootPath,
+        java.util.EnumSet.of(FileVisitOption.FOLLOW_LINKS),
+        Int.MaxValue,
+        visitor
+      )
+    } catch {
+      case ex: IOException => LoggerOps.debug(s"Scan of $root failed: $ex")
+    }
+
+    // Rebuild the top-down ordering from the per-directory entries
+    val files = mutable.ArrayBuffer[PathLike]()
+    def collect(dir: java.nio.file.Path): Unit = {
+      entries
+        .get(dir)
+        .foreach(dirEntries => {
+          files.addAll(dirEntries.files)
+          dirEntries.directories.foreach(collect)
+        })
+    }
+    collect(rootPath)
+    files.toArray
+  }
+}
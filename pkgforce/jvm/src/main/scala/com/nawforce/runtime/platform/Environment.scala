@@ -42,6 +42,18 @@ object Environment {
     }
   }
 
+  /** Maximum size of the cache in bytes, configured in megabytes via APEXLINK_CACHE_SIZE */
+  def cacheSizeLimit: Option[Long] = {
+    try {
+      Option(System.getenv("APEXLINK_CACHE_SIZE"))
+        .filter(_.nonEmpty)
+        .map(_.toLong * 1024 * 1024)
+        .filter(_ > 0)
+    } catch {
+      case _: Throwable => None
+    }
+  }
+
   // Only for test usage
   def setCacheDirOverride(value: Option[Option[PathLike]]): Unit = {
     cacheDirOverride = value
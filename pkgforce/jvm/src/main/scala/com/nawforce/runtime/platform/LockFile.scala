@@ -0,0 +1,64 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+package com.nawforce.runtime.platform
+
+import com.nawforce.pkgforce.path.PathLike
+
+import java.io.IOException
+import java.nio.channels.{FileChannel, OverlappingFileLockException}
+import java.nio.file.StandardOpenOption
+import java.util.concurrent.ConcurrentHashMap
+
+/** Exclusive lock on a file used to coordinate processes sharing a directory. The lock is advisory, it only excludes
+  * others locking the same file, and is also held against other threads of this process. If the lock can not be
+  * taken the operation is performed without it.
+  */
+object LockFile {
+
+  // File locks are held by the process so threads also need excluding
+  private val monitors = new ConcurrentHashMap[String, Object]()
+
+  def withLock[T](path: PathLike)(op: => T): T = {
+    val monitor = monitors.computeIfAbsent(path.toString, _ => new Object())
+    monitor.synchronized {
+      val channel =
+        try {
+          Some(
+            FileChannel.open(
+              path.native.asInstanceOf[java.nio.file.Path],
+              StandardOpenOption.CREATE,
+              StandardOpenOption.WRITE
+            )
+          )
+        } catch {
+          case _: IOException | _: UnsupportedOperationException => None
+        }
+      try {
+        val lock =
+          try {
+            channel.map(_.lock())
+          } catch {
+            case _: IOException | _: OverlappingFileLockException => None
+          }
+        try {
+          op
+        } finally {
+          lock.foreach(_.release())
+        }
+      } finally {
+        channel.foreach(_.close())
+      }
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+package com.nawforce.runtime.platform
+
+import java.util.concurrent.{ArrayBlockingQueue, TimeUnit}
+
+/** Runs iterators ahead of their consumer on a daemon thread, values are passed via a bounded buffer so a producer
+  * can only get capacity values ahead. Any exception thrown by the producer is rethrown to the consumer. A consumer
+  * that abandons the iterator before it is exhausted should close it so the producer stops.
+  */
+object Pipeline {
+
+  /** How long a producer waits on a full buffer before checking if it has been closed */
+  final val OFFER_TIMEOUT_MS: Long = 100
+
+  private sealed trait Slot[+T]
+  private final case class Value[T](value: T)     extends Slot[T]
+  private final case class Failure(ex: Throwable) extends Slot[Nothing]
+  private case object End                         extends Slot[Nothing]
+
+  /** Start producing from source immediately, returning an iterator over the produced values */
+  def readAhead[T](name: String, capacity: Int)(
+    source: () => Iterator[T]
+  ): Iterator[T] with AutoCloseable = {
+    val buffer           = new ArrayBlockingQueue[Slot[T]](capacity)
+    @volatile var closed = false
+
+    // Returns false if closed before the slot could be added
+    def put(slot: Slot[T]): Boolean = {
+      while (!closed) {
+        if (buffer.offer(slot, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS))
+          return true
+      }
+      false
+    }
+
+    val producer = new Thread(() => {
+      try {
+        val values = source()
+        while (values.hasNext && put(Value(values.next()))) {}
+        put(End)
+      } catch {
+        case _: InterruptedException if closed => ()
+        case ex: Throwable                     => put(Failure(ex))
+      }
+    })
+    producer.setDaemon(true)
+    producer.setName(s"apex-link $name")
+    producer.start()
+
+    new Iterator[T] with AutoCloseable {
+      private var next_ : Slot[T] = _
+
+      override def hasNext: Boolean = {
+        if (closed)
+          return false
+        if (next_ == null)
+          next_ = buffer.take()
+        next_ match {
+          case Failure(ex) => throw ex
+          case End         => false
+          case _           => true
+        }
+      }
+
+      override def next(): T = {
+        if (!hasNext)
+          throw new NoSuchElementException()
+        val value = next_.asInstanceOf[Value[T]].value
+        next_ = null
+        value
+      }
+
+      /** Stop the producer, discarding any values it has produced that have not been consumed */
+      override def close(): Unit = {
+        if (!closed) {
+          closed = true
+          producer.interrupt()
+          buffer.clear()
+        }
+      }
+    }
+  }
+}
@@ -105,14 +105,16 @@ trait WithLocation extends NoBindingFactoryAdapter {
 object XMLLineLoader extends factory.XMLLoader[Elem] {
   override def adapter = new parsing.NoBindingFactoryAdapter with WithLocation
 
-  private lazy val cachedParser = {
+  // SAXParser is not thread safe so cache one per thread
+  private val cachedParser = ThreadLocal.withInitial[SAXParser](() => {
     val f = SAXParserFactory.newInstance()
     f.setNamespaceAware(false)
     f.newSAXParser()
-  }
+  })
 
   override def parser: SAXParser = {
-    cachedParser.reset()
-    cachedParser
+    val parser = cachedParser.get()
+    parser.reset()
+    parser
   }
 }
@@ -0,0 +1,53 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+
+package com.nawforce.runtime.platform
+
+import org.scalatest.funsuite.AnyFunSuite
+
+import java.util.concurrent.atomic.AtomicInteger
+
+class PipelineTest extends AnyFunSuite {
+
+  private def producerThread(name: String): Option[Thread] = {
+    val threads = new Array[Thread](Thread.activeCount() * 2)
+    threads.take(Thread.enumerate(threads)).find(_.getName == s"apex-link $name")
+  }
+
+  test("Values read ahead in order") {
+    val values = Pipeline.readAhead("ordered", 2)(() => (1 to 100).iterator)
+    assert(values.toSeq == (1 to 100))
+  }
+
+  test("Producer failure rethrown to consumer") {
+    val values =
+      Pipeline.readAhead("failing", 2)(() => Iterator(1) ++ Iterator(throw new IllegalStateException()))
+    assert(values.next() == 1)
+    assertThrows[IllegalStateException](values.hasNext)
+  }
+
+  test("Closing an abandoned iterator stops the producer") {
+    val produced = new AtomicInteger()
+    val values =
+      Pipeline.readAhead("abandoned", 2)(() => Iterator.from(0).map(_ => produced.incrementAndGet()))
+    assert(values.next() == 1)
+    val producer = producerThread("abandoned")
+    assert(producer.nonEmpty)
+
+    values.close()
+    producer.get.join(10 * Pipeline.OFFER_TIMEOUT_MS)
+    assert(!producer.get.isAlive)
+    assert(!values.hasNext)
+  }
+}
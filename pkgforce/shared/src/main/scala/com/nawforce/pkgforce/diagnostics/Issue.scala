@@ -58,12 +58,17 @@ object Issue {
     upickle.default.readwriter[String].bimap[PathLike](_.toString, Path(_))
   implicit val rw: RW[Issue] = macroRW
 
+  /* Total ordering so issues are reported in the same order however they were logged */
   implicit val ordering: Ordering[Issue] = Ordering
     .by[Issue, Int](
       issue => if (DiagnosticCategory.isErrorType(issue.diagnostic.category)) 0 else 1
     )
     .orElseBy(_.diagnostic.location.startLine)
     .orElseBy(_.diagnostic.location.startPosition)
+    .orElseBy(_.diagnostic.location.endLine)
+    .orElseBy(_.diagnostic.location.endPosition)
+    .orElseBy(_.diagnostic.category.value)
+    .orElseBy(_.diagnostic.message)
 
   def apply(
     path: PathLike,
@@ -0,0 +1,158 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+package com.nawforce.pkgforce.documents
+
+import com.nawforce.pkgforce.diagnostics.LoggerOps
+import com.nawforce.pkgforce.path.PathLike
+import com.nawforce.runtime.platform.LockFile
+
+import java.nio.ByteBuffer
+import scala.collection.mutable
+
+/* Size & last use time of a cache entry */
+final case class CacheIndexEntry(size: Int, lastUsed: Long)
+
+/* Least recently used index of cache entries by key hash. Uses are tracked in memory and persisted to a small index
+ * file when saved, the file is re-read and merged during the save so that entries added by other processes sharing
+ * the cache directory are retained. Reads & saves are made holding a lock file so that concurrent saves by those
+ * processes are not lost.
+ */
+final class CacheIndex(val path: PathLike) {
+
+  // Entries in least recently used first order
+  private val entries = mutable.LinkedHashMap[Int, CacheIndexEntry]()
+  private val removed = mutable.HashSet[Int]()
+  private var total   = 0L
+
+  private val lockPath = path.parent.join(path.basename + CacheIndex.LOCK_SUFFIX)
+
+  // Recover entries from an existing index file, there is nothing to lock until one has been saved
+  synchronized {
+    (if (path.exists) LockFile.withLock(lockPath)(read()) else None)
+      .foreach(recovered => recovered.sortBy(_._2.lastUsed).foreach(kv => add(kv._1, kv._2)))
+  }
+
+  /** Record a use of an entry */
+  def touch(hash: Int, size: Int, time: Long): Unit =
+    synchronized {
+      remove(hash)
+      add(hash, CacheIndexEntry(size, time))
+    }
+
+  /** Remove an entry from the index */
+  def evict(hash: Int): Unit =
+    synchronized {
+      remove(hash)
+      removed.add(hash)
+    }
+
+  /** The least recently used entry */
+  def leastRecent: Option[(Int, CacheIndexEntry)] = synchronized { entries.headOption }
+
+  /** Total size of all the entries */
+  def totalSize: Long = synchronized { total }
+
+  /** Number of entries in the index */
+  def size: Int = synchronized { entries.size }
+
+  /** Test if an entry is in the index */
+  def contains(hash: Int): Boolean = synchronized { entries.contains(hash) }
+
+  /** Hashes of all the entries in the index */
+  def hashes: Array[Int] = synchronized { entries.keys.toArray }
+
+  /** Merge in entries that we have not evicted, where they are newer than those already held */
+  def merge(others: Array[(Int, CacheIndexEntry)]): Unit =
+    synchronized {
+      others
+        .filterNot(kv => removed.contains(kv._1))
+        .foreach(kv => {
+          entries.get(kv._1) match {
+            case Some(existing) if existing.lastUsed >= kv._2.lastUsed => ()
+            case _                                                     => touch(kv._1, kv._2.size, kv._2.lastUsed)
+          }
+        })
+      val ordered = entries.toArray.sortBy(_._2.lastUsed)
+      entries.clear()
+      total = 0
+      ordered.foreach(kv => add(kv._1, kv._2))
+    }
+
+  /** Write the index, merging in entries from the existing file that we have not seen or evicted */
+  def save(): Unit =
+    synchronized {
+      LockFile.withLock(lockPath) {
+        read().foreach(merge)
+        removed.clear()
+
+        val buffer =
+          ByteBuffer.allocate(CacheIndex.HEADER_SIZE + entries.size * CacheIndex.ENTRY_SIZE)
+        buffer.putInt(CacheIndex.MAGIC)
+        buffer.putInt(entries.size)
+        entries.foreach(kv => {
+          buffer.putInt(kv._1)
+          buffer.putInt(kv._2.size)
+          buffer.putLong(kv._2.lastUsed)
+        })
+        path
+          .write(buffer.array())
+          .foreach(err => {
+            LoggerOps.debug(s"Failed to write cache index $path: $err")
+          })
+      }
+    }
+
+  private def add(hash: Int, entry: CacheIndexEntry): Unit = {
+    entries.put(hash, entry)
+    total += entry.size
+  }
+
+  private def remove(hash: Int): Unit = {
+    entries.remove(hash).foreach(old => total -= old.size)
+  }
+
+  private def read(): Option[Array[(Int, CacheIndexEntry)]] = {
+    if (!path.exists)
+      return None
+
+    path.readBytes() match {
+      case Left(err) =>
+        LoggerOps.debug(s"Failed to read cache index $path: $err")
+        None
+      case Right(data) =>
+        val buffer = ByteBuffer.wrap(data)
+        if (data.length < CacheIndex.HEADER_SIZE || buffer.getInt() != CacheIndex.MAGIC) {
+          None
+        } else {
+          val count = buffer.getInt()
+          if (count < 0 || data.length != CacheIndex.HEADER_SIZE + count * CacheIndex.ENTRY_SIZE) {
+            None
+          } else {
+            Some(
+              Array
+                .fill(count)((buffer.getInt(), CacheIndexEntry(buffer.getInt(), buffer.getLong())))
+            )
+          }
+        }
+    }
+  }
+}
+
+object CacheIndex {
+  final val NAME: String        = "cache.idx"
+  final val LOCK_SUFFIX: String = ".lock"
+  final val MAGIC: Int          = 0x41494431
+  final val HEADER_SIZE: Int    = 8
+  final val ENTRY_SIZE: Int     = 16
+}
@@ -18,6 +18,7 @@ import com.nawforce.pkgforce.diagnostics._
 import com.nawforce.pkgforce.names.{Name, TypeName}
 import com.nawforce.pkgforce.path.{Location, PathLike}
 import com.nawforce.pkgforce.sfdx.ForceIgnore
+import com.nawforce.runtime.platform.DirectoryScanner
 
 import scala.collection.mutable
 
@@ -78,6 +79,8 @@ final class DocumentIndex(
   }
 
   /** Check a directory path would be included in index. */
+  def isVisibleDirectory(path: PathLike): Boolean = isVisiblePath(path)
+
   @scala.annotation.tailrec
   private def isVisiblePath(path: PathLike): Boolean = {
     if (this.path == path) return true
@@ -291,7 +294,9 @@ object DocumentIndex {
   }
 }
 
-/** Directory indexer, somewhat optimised to minimise scan time */
+/** Directory indexer, somewhat optimised to minimise scan time. Excluded & ignored directories are pruned during the
+  * scan so they are never read, files are then classified into documents in top-down order.
+  */
 final class DirectoryIndexer(
   logger: IssueLogger,
   path: PathLike,
@@ -307,27 +312,29 @@ final class DirectoryIndexer(
     if (isExcluded(path))
       return
 
-    if (path.isDirectory) {
-      if (forceIgnore.forall(_.includeDirectory(path))) {
-        val entries = path.splitDirectoryEntries()
-        // Enforce top-down handling
-        entries._1.foreach(addPath)
-        entries._2.foreach(indexPath)
-      } else {
-        LoggerOps.debug(s"Ignoring directory $path")
-      }
+    // Not testing if files are regular to improve scan performance, will fail later on read
+    DirectoryScanner
+      .scan(path, includeDirectory, includeFile)
+      .foreach(path => MetadataDocument(path).foreach(dt => collection.add(logger, dt)))
+  }
+
+  private def includeDirectory(path: PathLike): Boolean = {
+    if (isExcluded(path)) {
+      false
+    } else if (forceIgnore.forall(_.includeDirectory(path))) {
+      true
     } else {
-      addPath(path)
+      LoggerOps.debug(s"Ignoring directory $path")
+      false
     }
   }
 
-  private def addPath(path: PathLike): Unit = {
-    // Not testing if this is a regular file to improve scan performance, will fail later on read
+  private def includeFile(path: PathLike): Boolean = {
     if (forceIgnore.forall(_.includeFile(path))) {
-      val dt = MetadataDocument(path)
-      dt.foreach(dt => collection.add(logger, dt))
+      true
     } else {
       LoggerOps.debug(s"Ignoring file $path")
+      false
     }
   }
 
@@ -0,0 +1,380 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+package com.nawforce.pkgforce.documents
+
+import com.nawforce.pkgforce.diagnostics.LoggerOps
+import com.nawforce.pkgforce.path.PathLike
+import com.nawforce.runtime.platform.{AppendFile, LockFile}
+
+import java.io.IOException
+import scala.collection.mutable
+
+/* Store holding all entries for a cache version in a single append-only pack file. Each record is prefixed by the
+ * key hash and payload length so the hash index can be rebuilt by hopping across record headers without touching
+ * payloads. Later records for the same hash replace earlier ones, the dead space is reclaimed by compaction during
+ * expiry. Writes are made holding a lock file so processes sharing the pack do not lose each other's records, gets
+ * read from an immutable snapshot of the index so they do not need to lock. Puts are held in memory until the store
+ * is saved, or they exceed MAX_UNWRITTEN_SIZE, and are then appended together so the lock is taken and the pack
+ * synced once per run of puts. Reads are positional rather than memory mapped, a mapping would have to be remade as
+ * the pack grows and can not be released before compaction replaces the file, the index holds record lengths so
+ * that each get is a single read. Record uses are tracked in a CacheIndex alongside the pack so that expiry can drop
+ * least recently used records to keep within the size limit.
+ */
+final class PackStore private (
+  val path: PathLike,
+  version: Int,
+  sizeLimit: Long,
+  opened: AppendFile
+) extends CacheStore {
+
+  private val lockPath = path.parent.join(path.basename + PackStore.LOCK_SUFFIX)
+  private val uses     = new CacheIndex(path.parent.join(path.basename + PackStore.INDEX_SUFFIX))
+
+  // The pack file & its index, replaced as a whole when records are added or the file is compacted
+  @volatile private var pack   = PackStore.Pack(opened, Map(), 0, 0)
+  @volatile private var closed = false
+
+  // Entries put but not yet written to the pack, by key hash
+  @volatile private var unwritten = Map[Int, Array[Byte]]()
+  private var unwrittenSize       = 0L
+
+  // Index records already in the pack, or create it
+  withLock(())
+
+  override def put(key: CacheKey, entry: Array[Byte]): Unit =
+    synchronized {
+      if (!closed) {
+        unwrittenSize += entry.length - unwritten.get(key.hash).map(_.length).getOrElse(0)
+        unwritten = unwritten.updated(key.hash, entry)
+        uses.touch(
+          key.hash,
+          PackStore.RECORD_HEADER_SIZE + entry.length,
+          System.currentTimeMillis()
+        )
+        if (unwrittenSize > PackStore.MAX_UNWRITTEN_SIZE)
+          write()
+      }
+    }
+
+  override def get(key: CacheKey): Option[Array[Byte]] = {
+    // Read unwritten before pack, a write updates the pack before clearing unwritten
+    val pending = unwritten.get(key.hash)
+    val current = pack
+    if (closed)
+      return None
+
+    if (pending.nonEmpty) {
+      uses.touch(
+        key.hash,
+        PackStore.RECORD_HEADER_SIZE + pending.get.length,
+        System.currentTimeMillis()
+      )
+      return pending
+    }
+
+    current.index
+      .get(key.hash)
+      .flatMap(record => {
+        try {
+          val data = current.file.read(
+            record.offset + PackStore.RECORD_HEADER_SIZE,
+            record.length - PackStore.RECORD_HEADER_SIZE
+          )
+          uses.touch(key.hash, record.length, System.currentTimeMillis())
+          Some(data)
+        } catch {
+          case ex: IOException =>
+            // The file may have been replaced by a compaction since the index was read
+            if (current ne pack) {
+              get(key)
+            } else {
+              LoggerOps.debug(s"Failed to read from $path: $ex")
+              None
+            }
+        }
+      })
+  }
+
+  /** Remove pack files for other cache versions that have not been used recently, or that are needed to bring
+    * the total size of packs within the size limit. Records in this pack are then dropped in least recently used
+    * order if they have not been used recently or are needed to bring it within the remaining limit, the pack is
+    * compacted if any were dropped or if more than half of it is dead space.
+    */
+  override def expire(minTimeStamp: Long): Boolean = {
+    write()
+
+    val others = path.parent
+      .splitDirectoryEntries()
+      ._1
+      .filter(p => p.basename.endsWith(PackStore.SUFFIX) && p != path)
+      .sortBy(_.lastModified().getOrElse(0L))
+
+    var totalSize = others.map(_.size).sum + pack.file.length
+    others.foreach(other => {
+      if (other.lastModified().exists(_ < minTimeStamp) || totalSize > sizeLimit) {
+        val size = other.size
+        if (other.delete().isEmpty) {
+          totalSize -= size
+          other.parent.join(other.basename + PackStore.LOCK_SUFFIX).delete()
+          other.parent.join(other.basename + PackStore.INDEX_SUFFIX).delete()
+        }
+      }
+    })
+    val limit = sizeLimit - (totalSize - pack.file.length)
+
+    withLock {
+      // Forget uses of records no longer in the pack, such as after it was reset by another process
+      uses.hashes.filterNot(pack.index.contains).foreach(uses.evict)
+
+      var dropped   = false
+      var candidate = nextEviction(minTimeStamp, limit)
+      while (candidate.nonEmpty) {
+        uses.evict(candidate.get)
+        pack = pack.withoutRecord(candidate.get)
+        dropped = true
+        candidate = nextEviction(minTimeStamp, limit)
+      }
+
+      if (dropped || pack.deadBytes > pack.file.length / 2)
+        compact()
+    }
+    uses.save()
+    true
+  }
+
+  override def save(): Unit = {
+    write()
+    uses.save()
+  }
+
+  override def close(): Unit =
+    synchronized {
+      if (!closed) {
+        write()
+        closed = true
+        pack.file.close()
+        pack = PackStore.Pack(pack.file, Map(), 0, 0)
+      }
+    }
+
+  /** Number of live entries in the pack, for testing */
+  def size: Int = pack.index.size
+
+  private def nextEviction(minTimeStamp: Long, limit: Long): Option[Int] = {
+    uses.leastRecent
+      .filter(kv => kv._2.lastUsed < minTimeStamp || uses.totalSize > limit)
+      .map(_._1)
+  }
+
+  /* Append unwritten entries to the pack as a single write */
+  private def write(): Unit =
+    synchronized {
+      val entries = unwritten.toArray
+      if (entries.nonEmpty) {
+        withLock {
+          pack.file.append(PackStore.records(entries)) match {
+            case Left(err) => LoggerOps.debug(s"Failed to append to $path: $err")
+            case Right(offset) =>
+              var current = pack
+              var at      = offset
+              entries.foreach(entry => {
+                val length = PackStore.RECORD_HEADER_SIZE + entry._2.length
+                current = current.withRecord(entry._1, at, length)
+                at += length
+              })
+              pack = current
+          }
+        }
+        unwritten = Map()
+        unwrittenSize = 0
+      }
+    }
+
+  /* Run a write operation on an up to date pack, holding the lock file so that other processes are excluded */
+  private def withLock(op: => Unit): Unit =
+    synchronized {
+      if (!closed) {
+        LockFile.withLock(lockPath) {
+          try {
+            sync()
+            op
+          } catch {
+            case ex: IOException => LoggerOps.debug(s"Failed to update pack file $path: $ex")
+          }
+        }
+      }
+    }
+
+  /* Bring the pack up to date with the file, must be called holding the lock file. If another process has replaced
+   * the file it is reopened, otherwise records appended since the last sync are added to the index. A partially
+   * written record at the end of the file can only be from a failed write so it is dropped to keep future appends
+   * reachable. Records we are not tracking the use of, such as those appended by other processes, are assumed to
+   * have been used when the file was last modified.
+   */
+  private def sync(): Unit = {
+    if (!pack.file.isCurrent) {
+      AppendFile.open(path) match {
+        case Left(err) => LoggerOps.debug(s"Failed to reopen pack file $path: $err")
+        case Right(file) =>
+          pack.file.close()
+          pack = PackStore.Pack(file, Map(), 0, 0)
+      }
+    }
+
+    val file   = pack.file
+    val length = file.length
+    if (pack.scanned == 0) {
+      if (
+        length < PackStore.HEADER_SIZE || file
+          .readInt(0) != PackStore.MAGIC || file.readInt(4) != version
+      ) {
+        reset()
+        return
+      }
+      pack = pack.copy(scanned = PackStore.HEADER_SIZE)
+    }
+
+    var current   = pack
+    var valid     = true
+    val untracked = mutable.ArrayBuffer[(Int, Int)]()
+    while (valid && current.scanned + PackStore.RECORD_HEADER_SIZE <= length) {
+      val offset       = current.scanned
+      val recordLength = file.readInt(offset + 4)
+      if (recordLength < 0 || offset + PackStore.RECORD_HEADER_SIZE + recordLength > length) {
+        valid = false
+      } else {
+        val hash = file.readInt(offset)
+        current = current.withRecord(hash, offset, PackStore.RECORD_HEADER_SIZE + recordLength)
+        if (!uses.contains(hash))
+          untracked.append((hash, PackStore.RECORD_HEADER_SIZE + recordLength))
+      }
+    }
+    pack = current
+
+    if (untracked.nonEmpty) {
+      val modified = path.lastModified().getOrElse(0L)
+      uses.merge(untracked.map(kv => (kv._1, CacheIndexEntry(kv._2, modified))).toArray)
+    }
+
+    if (current.scanned != length) {
+      LoggerOps.debug(s"Truncating pack file $path at ${current.scanned} of $length bytes")
+      file.truncate(current.scanned)
+    }
+  }
+
+  private def reset(): Unit = {
+    AppendFile.replace(path, Iterator(PackStore.header(version))) match {
+      case Left(err) => LoggerOps.debug(s"Failed to reset pack file $path: $err")
+      case Right(file) =>
+        pack.file.close()
+        pack = PackStore.Pack(file, Map(), PackStore.HEADER_SIZE, 0)
+    }
+  }
+
+  /* Rewrite the pack with only live records, those not replaced or dropped, including those appended by other
+   * processes, must be called holding the lock file. Records are copied one at a time to a new file which then
+   * replaces the existing one so that any other process reading the old pack is not disturbed.
+   */
+  private def compact(): Unit = {
+    LoggerOps.debugTime(s"Compacted pack file $path") {
+      val old     = pack
+      val live    = old.index.toArray.sortBy(_._2.offset)
+      val records = live.iterator.map(kv => old.file.read(kv._2.offset, kv._2.length))
+
+      AppendFile.replace(path, Iterator(PackStore.header(version)) ++ records) match {
+        case Left(err) => LoggerOps.debug(s"Failed to compact pack file $path: $err")
+        case Right(file) =>
+          var compacted = PackStore.Pack(file, Map(), PackStore.HEADER_SIZE, 0)
+          live.foreach(record => {
+            compacted = compacted.withRecord(record._1, compacted.scanned, record._2.length)
+          })
+          pack = compacted
+          old.file.close()
+      }
+    }
+  }
+}
+
+object PackStore {
+  final val SUFFIX: String          = ".pack"
+  final val MAGIC: Int              = 0x41504b31
+  final val HEADER_SIZE: Int        = 8
+  final val RECORD_HEADER_SIZE: Int = 8
+  final val LOCK_SUFFIX: String     = ".lock"
+  final val INDEX_SUFFIX: String    = ".idx"
+
+  /** Maximum size of entries held before they are written to the pack without waiting for a save */
+  final val MAX_UNWRITTEN_SIZE: Long = 1024 * 1024
+
+  /* Offset & length of a record in the pack, the length includes the record header */
+  private final case class Record(offset: Long, length: Int)
+
+  /* A pack file with the latest record for each hash, scanned is the end of the last record indexed and deadBytes
+   * the size of records that have been replaced or dropped.
+   */
+  private final case class Pack(
+    file: AppendFile,
+    index: Map[Int, Record],
+    scanned: Long,
+    deadBytes: Long
+  ) {
+    def withRecord(hash: Int, offset: Long, length: Int): Pack = {
+      val replaced = index.get(hash).map(_.length)
+      Pack(
+        file,
+        index.updated(hash, Record(offset, length)),
+        offset + length,
+        deadBytes + replaced.getOrElse(0)
+      )
+    }
+
+    def withoutRecord(hash: Int): Pack = {
+      val dropped = index.get(hash).map(_.length)
+      Pack(file, index - hash, scanned, deadBytes + dropped.getOrElse(0))
+    }
+  }
+
+  /** Open (or create) the pack file for a cache version in the passed directory. */
+  def open(cacheDir: PathLike, version: Int, sizeLimit: Long): Either[String, PackStore] = {
+    val asHex = version.toHexString
+    val path  = cacheDir.join("0" * (8 - asHex.length) + asHex + SUFFIX)
+    AppendFile.open(path).map(file => new PackStore(path, version, sizeLimit, file))
+  }
+
+  private def header(version: Int): Array[Byte] = {
+    val data = new Array[Byte](HEADER_SIZE)
+    writeInt(data, 0, MAGIC)
+    writeInt(data, 4, version)
+    data
+  }
+
+  private def records(entries: Array[(Int, Array[Byte])]): Array[Byte] = {
+    val data   = new Array[Byte](entries.map(RECORD_HEADER_SIZE + _._2.length).sum)
+    var offset = 0
+    entries.foreach(entry => {
+      writeInt(data, offset, entry._1)
+      writeInt(data, offset + 4, entry._2.length)
+      System.arraycopy(entry._2, 0, data, offset + RECORD_HEADER_SIZE, entry._2.length)
+      offset += RECORD_HEADER_SIZE + entry._2.length
+    })
+    data
+  }
+
+  private def writeInt(data: Array[Byte], offset: Int, value: Int): Unit = {
+    data(offset) = (value >>> 24).toByte
+    data(offset + 1) = (value >>> 16).toByte
+    data(offset + 2) = (value >>> 8).toByte
+    data(offset + 3) = value.toByte
+  }
+}
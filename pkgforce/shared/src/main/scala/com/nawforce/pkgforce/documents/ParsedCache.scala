@@ -22,12 +22,9 @@ import scala.util.hashing.MurmurHash3
 
 // Key of cache entries, update version if the format changes
 final case class CacheKey(version: Int, packageContext: PackageContext, sourceKey: Int) {
-  def hashParts: Array[String] = {
-    val hash      = MurmurHash3.bytesHash(writeBinary(this))
-    val asHex     = hash.toHexString
-    val keyString = "0" * (8 - asHex.length) + asHex
-    Array(keyString.substring(0, 4), keyString.substring(4, 8))
-  }
+  lazy val hash: Int = MurmurHash3.bytesHash(writeBinary(this))
+
+  def hashParts: Array[String] = DirectoryStore.hashParts(hash)
 
   override def equals(that: Any): Boolean = {
     that match {
@@ -49,8 +46,12 @@ object CacheKey {
     name: String,
     contents: Array[Byte]
   ): CacheKey = {
-    val keyHash = MurmurHash3.arrayHash(contents, MurmurHash3.stringHash(name))
-    CacheKey(version, packageContext, keyHash)
+    CacheKey(version, packageContext, sourceKey(name, contents))
+  }
+
+  /** Key used to identify a source file by name & contents */
+  def sourceKey(name: String, contents: Array[Byte]): Int = {
+    MurmurHash3.arrayHash(contents, MurmurHash3.stringHash(name))
   }
 }
 
@@ -84,24 +85,170 @@ object CacheEntry {
   implicit val rw: RW[CacheEntry] = macroRW
 }
 
+/* Storage backend for the parsed class cache */
+sealed abstract class CacheBackend(val value: String)
+case object DirectoryBackend extends CacheBackend("directory")
+case object PackBackend      extends CacheBackend("pack")
+
+/* Storage for serialised CacheEntry values, implementations must tolerate concurrent gets */
+trait CacheStore {
+
+  /** Store an encoded CacheEntry for a key, ignores storage errors. The entry may be held in memory until saved. */
+  def put(key: CacheKey, entry: Array[Byte]): Unit
+
+  /** Recover an encoded CacheEntry for a key, the entry key may not match if the key hash collided */
+  def get(key: CacheKey): Option[Array[Byte]]
+
+  /** Expire old entries, returns false if the expiry was incomplete and should be repeated */
+  def expire(minTimeStamp: Long): Boolean
+
+  /** Persist any state held in memory, called after a run of puts has completed */
+  def save(): Unit
+
+  /** Release any resources held before the cache directory is cleared */
+  def close(): Unit
+}
+
+/* Store holding each entry in its own file under a two-level hash directory. Entry uses are tracked in a
+ * CacheIndex so that expiry can evict least recently used entries to keep within a size limit. The directory is
+ * walked once, on the first expiry, to track any entries the index is missing.
+ */
+final class DirectoryStore(path: PathLike, sizeLimit: Long) extends CacheStore {
+
+  private val index  = new CacheIndex(path.join(CacheIndex.NAME))
+  private var seeded = false
+
+  override def put(key: CacheKey, entry: Array[Byte]): Unit = {
+    val hashParts = key.hashParts
+    path.createDirectory(hashParts.head) match {
+      case Left(_) => ()
+      case Right(outer) =>
+        val inner = outer.join(hashParts(1))
+        if (inner.write(entry).isEmpty)
+          index.touch(key.hash, entry.length, System.currentTimeMillis())
+    }
+  }
+
+  override def get(key: CacheKey): Option[Array[Byte]] = {
+    val hashParts = key.hashParts
+    val outer     = path.join(hashParts.head)
+    if (outer.isDirectory) {
+      val data = outer.join(hashParts(1)).readBytes().toOption
+      data.foreach(data => index.touch(key.hash, data.length, System.currentTimeMillis()))
+      data
+    } else {
+      None
+    }
+  }
+
+  /** Evict least recently used entries that are either older than minTimeStamp or needed to bring the cache within
+    * its size limit. At most MAX_EVICTIONS are removed per call, returns false if more remain to be evicted.
+    */
+  override def expire(minTimeStamp: Long): Boolean = {
+    if (!seeded) {
+      seed()
+      seeded = true
+    }
+
+    var evictions = 0
+    var candidate = nextEviction(minTimeStamp)
+    while (candidate.nonEmpty && evictions < DirectoryStore.MAX_EVICTIONS) {
+      evict(candidate.get)
+      evictions += 1
+      candidate = nextEviction(minTimeStamp)
+    }
+    index.save()
+    candidate.isEmpty
+  }
+
+  override def save(): Unit = index.save()
+
+  override def close(): Unit = ()
+
+  /** Number of entries being tracked, for testing */
+  def size: Int = index.size
+
+  private def nextEviction(minTimeStamp: Long): Option[Int] = {
+    index.leastRecent
+      .filter(kv => kv._2.lastUsed < minTimeStamp || index.totalSize > sizeLimit)
+      .map(_._1)
+  }
+
+  private def evict(hash: Int): Unit = {
+    index.evict(hash)
+    val hashParts = DirectoryStore.hashParts(hash)
+    val outer     = path.join(hashParts.head)
+    outer.join(hashParts(1)).delete()
+    if (outer.directoryList().exists(_.isEmpty))
+      outer.delete()
+  }
+
+  /* Add entries the index is not tracking, such as those written before the index was introduced or by a process
+   * that exited before saving its index. This walks the directory so is only performed once. */
+  private def seed(): Unit = {
+    LoggerOps.debugTime(s"Seeded cache index for $path") {
+      val existing = path
+        .splitDirectoryEntries()
+        ._2
+        .filter(_.basename.length == 4)
+        .flatMap(outer => {
+          outer
+            .splitDirectoryEntries()
+            ._1
+            .filter(_.basename.length == 4)
+            .flatMap(inner => {
+              DirectoryStore
+                .hash(outer.basename + inner.basename)
+                .map(hash => {
+                  (hash, CacheIndexEntry(inner.size.toInt, inner.lastModified().getOrElse(0L)))
+                })
+            })
+        })
+      index.merge(existing)
+    }
+  }
+}
+
+object DirectoryStore {
+
+  /** Maximum number of entries evicted in a single expiry pass */
+  final val MAX_EVICTIONS: Int = 1000
+
+  private[documents] def hashParts(hash: Int): Array[String] = {
+    val asHex     = hash.toHexString
+    val keyString = "0" * (8 - asHex.length) + asHex
+    Array(keyString.substring(0, 4), keyString.substring(4, 8))
+  }
+
+  private def hash(hex: String): Option[Int] = {
+    try {
+      Some(java.lang.Long.parseLong(hex, 16).toInt)
+    } catch {
+      case _: NumberFormatException => None
+    }
+  }
+}
+
 /* Parsed class cache */
-final class ParsedCache(val path: PathLike, version: Int) {
+final class ParsedCache private (
+  val path: PathLike,
+  version: Int,
+  backend: CacheBackend,
+  sizeLimit: Long,
+  opened: CacheStore
+) {
 
-  /** Upsert a key -> value pair, ignores storage errors */
+  @volatile private var store = opened
+
+  /** Upsert a key -> value pair, ignores storage errors. Other caches may not see the value until saved. */
   def upsert(
     packageContext: PackageContext,
     name: String,
     contents: Array[Byte],
     value: Array[Byte]
   ): Unit = {
-    val cacheKey  = CacheKey(version, packageContext, name, contents)
-    val hashParts = cacheKey.hashParts
-    path.createDirectory(hashParts.head) match {
-      case Left(_) => ()
-      case Right(outer) =>
-        val inner = outer.join(hashParts(1))
-        inner.write(writeBinary(CacheEntry(cacheKey, value)))
-    }
+    val cacheKey = CacheKey(version, packageContext, name, contents)
+    store.put(cacheKey, writeBinary(CacheEntry(cacheKey, value)))
   }
 
   /** Recover a value from a key */
@@ -110,48 +257,50 @@ final class ParsedCache(val path: PathLike, version: Int) {
     name: String,
     contents: Array[Byte]
   ): Option[Array[Byte]] = {
-    val cacheKey  = CacheKey(version, packageContext, name, contents)
-    val hashParts = cacheKey.hashParts
-    val outer     = path.join(hashParts.head)
-    if (outer.isDirectory) {
-      val inner = outer.join(hashParts(1))
-      inner.readBytes() match {
-        case Left(_) => ()
-        case Right(data) =>
-          try {
-            val ce = readBinary[CacheEntry](data)
-            if (ce.key == cacheKey)
-              return Some(ce.value)
-          } catch {
-            case ex: Throwable =>
-              LoggerOps.debug(s"Caught exception loading from $inner: $ex")
-          }
-      }
-    }
-    None
+    get(packageContext, CacheKey.sourceKey(name, contents))
   }
 
-  /** Expire old entries in the cache */
-  def expire(): Unit = expire(path, System.currentTimeMillis() - ParsedCache.EXPIRE_WINDOW)
+  /** Recover a value from a key using a pre-computed source key, see CacheKey.sourceKey */
+  def get(packageContext: PackageContext, sourceKey: Int): Option[Array[Byte]] = {
+    val cacheKey = CacheKey(version, packageContext, sourceKey)
+    store
+      .get(cacheKey)
+      .flatMap(data => {
+        try {
+          val ce = readBinary[CacheEntry](data)
+          if (ce.key == cacheKey)
+            Some(ce.value)
+          else
+            None
+        } catch {
+          case ex: Throwable =>
+            LoggerOps.debug(s"Caught exception loading from $path: $ex")
+            None
+        }
+      })
+  }
 
-  private def expire(path: PathLike, minTimeStamp: Long): Boolean = {
-    val (files, directories) = path.splitDirectoryEntries()
+  /** Expire old or least recently used entries in the cache, returns false if more remain to be expired */
+  def expire(): Boolean = store.expire(System.currentTimeMillis() - ParsedCache.EXPIRE_WINDOW)
 
-    val deletedFiles =
-      files.filter(f => f.lastModified().exists(_ < minTimeStamp)).count(_.delete().isEmpty)
-    val deletedDirectories = directories.map(d => expire(d, minTimeStamp)).count(_ == true)
+  /** Persist any state held by the store, such as the index of entry uses */
+  def save(): Unit = store.save()
 
-    if (deletedFiles == files.length && deletedDirectories == directories.length) {
-      path.delete().isEmpty
-    } else {
-      false
-    }
-  }
+  /** Release resources held by the store, the cache should not be used after closing */
+  def close(): Unit = store.close()
 
-  /** Clear the cache, useful for testing */
-  def clear(): Unit = {
-    clearContents(path)
-  }
+  /** Clear the cache, useful for testing. The cache directory & store are recreated so the cache remains usable. */
+  def clear(): Unit =
+    synchronized {
+      store.close()
+      clearContents(path)
+      path.parent
+        .createDirectory(path.basename)
+        .flatMap(_ => ParsedCache.openStore(path, version, backend, sizeLimit)) match {
+        case Left(err)     => LoggerOps.debug(s"Failed to reopen cache $path: $err")
+        case Right(opened) => store = opened
+      }
+    }
 
   private def clearContents(path: PathLike): Unit = {
     path.directoryList() match {
@@ -172,8 +321,13 @@ final class ParsedCache(val path: PathLike, version: Int) {
 object ParsedCache {
   val TEST_FILE: String   = "test_file"
   val EXPIRE_WINDOW: Long = 7 * 24 * 60 * 60 * 1000
+  val SIZE_LIMIT: Long    = 512L * 1024 * 1024
 
-  def create(version: Int): Either[String, ParsedCache] = {
+  def create(
+    version: Int,
+    backend: CacheBackend = DirectoryBackend,
+    sizeLimit: Long = Environment.cacheSizeLimit.getOrElse(SIZE_LIMIT)
+  ): Either[String, ParsedCache] = {
     val cacheDirOpt = Environment.cacheDir
     if (cacheDirOpt.isEmpty) {
       return Left(
@@ -192,17 +346,39 @@ object ParsedCache {
           Left(s"Cache directory '$cacheDir' exists but is not writable, error '$err'")
         case Right(created) =>
           created.delete()
-          Right(new ParsedCache(cacheDir, version))
+          open(cacheDir, version, backend, sizeLimit)
       }
     } else {
       cacheDir.parent.createDirectory(cacheDir.basename) match {
         case Left(err) =>
           Left(s"Cache directory '$cacheDir' does not exist and can not be created, error '$err'")
-        case Right(created) => Right(new ParsedCache(created, version))
+        case Right(created) => open(created, version, backend, sizeLimit)
       }
     }
   }
 
+  private def open(
+    cacheDir: PathLike,
+    version: Int,
+    backend: CacheBackend,
+    sizeLimit: Long
+  ): Either[String, ParsedCache] = {
+    openStore(cacheDir, version, backend, sizeLimit)
+      .map(store => new ParsedCache(cacheDir, version, backend, sizeLimit, store))
+  }
+
+  private def openStore(
+    cacheDir: PathLike,
+    version: Int,
+    backend: CacheBackend,
+    sizeLimit: Long
+  ): Either[String, CacheStore] = {
+    backend match {
+      case DirectoryBackend => Right(new DirectoryStore(cacheDir, sizeLimit))
+      case PackBackend      => PackStore.open(cacheDir, version, sizeLimit)
+    }
+  }
+
   def clear(): Unit = {
     create(0).map(_.clear())
   }
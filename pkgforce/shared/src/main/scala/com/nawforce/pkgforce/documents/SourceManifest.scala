@@ -0,0 +1,97 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+package com.nawforce.pkgforce.documents
+
+import com.nawforce.pkgforce.diagnostics.LoggerOps
+import com.nawforce.pkgforce.path.PathLike
+import upickle.default.{macroRW, ReadWriter => RW, _}
+
+// File stats & the cache source key computed from the contents when those stats were current
+final case class ManifestEntry(size: Long, lastModified: Long, sourceKey: Int)
+
+object ManifestEntry {
+  implicit val rw: RW[ManifestEntry] = macroRW
+
+  /** Create an entry by reading & hashing a file, stats are taken first so a concurrent change to the file can
+    * only result in stats that will not match next time. If the modified time is not available the entry will
+    * never be considered unchanged.
+    */
+  def apply(path: PathLike, name: String): Option[ManifestEntry] = {
+    val lastModified = path.lastModified().getOrElse(-1L)
+    val size         = path.size
+    path
+      .readBytes()
+      .toOption
+      .map(data => ManifestEntry(size, lastModified, CacheKey.sourceKey(name, data)))
+  }
+}
+
+/* Per-module manifest of source stats, it allows the source key of unchanged files to be recovered without
+ * reading & hashing their contents. Entries modified close to when the manifest was written are not trusted as the
+ * file could have been updated again within the timestamp granularity.
+ */
+final case class SourceManifest(written: Long, entries: Map[String, ManifestEntry]) {
+
+  /** Obtain the entry for a path if the file stats show it has not changed. */
+  def unchanged(path: PathLike): Option[ManifestEntry] = {
+    entries
+      .get(path.toString)
+      .filter(
+        entry =>
+          entry.lastModified < written - SourceManifest.RACY_WINDOW &&
+            path.lastModified().contains(entry.lastModified) &&
+            path.size == entry.size
+      )
+  }
+}
+
+object SourceManifest {
+  implicit val rw: RW[SourceManifest] = macroRW
+
+  final val RACY_WINDOW: Long = 2000
+  final val NAME_PREFIX       = "$manifest:"
+
+  val empty: SourceManifest = SourceManifest(0, Map())
+
+  /** Load the manifest for a module path, returns an empty manifest if not available. */
+  def load(
+    cache: ParsedCache,
+    packageContext: PackageContext,
+    modulePath: PathLike
+  ): SourceManifest = {
+    cache
+      .get(packageContext, NAME_PREFIX + modulePath.toString, Array())
+      .flatMap(data => {
+        try {
+          Some(readBinary[SourceManifest](data))
+        } catch {
+          case ex: Throwable =>
+            LoggerOps.debug(s"Caught exception loading manifest for $modulePath: $ex")
+            None
+        }
+      })
+      .getOrElse(empty)
+  }
+
+  /** Save the manifest for a module path, ignores storage errors. */
+  def save(
+    cache: ParsedCache,
+    packageContext: PackageContext,
+    modulePath: PathLike,
+    manifest: SourceManifest
+  ): Unit = {
+    cache.upsert(packageContext, NAME_PREFIX + modulePath.toString, Array(), writeBinary(manifest))
+    cache.save()
+  }
+}
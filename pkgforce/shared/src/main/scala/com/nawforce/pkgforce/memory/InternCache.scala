@@ -13,17 +13,16 @@
  */
 package com.nawforce.pkgforce.memory
 
-import scala.collection.mutable
+import java.util.concurrent.ConcurrentHashMap
 
 /** Cache suitable for interning value. */
 class InternCache[T] extends CleanableCache {
-  private var cache = mutable.HashMap[T, T]()
+  // Replaced as a whole when cleaned so interning never needs to lock
+  @volatile private var cache = new ConcurrentHashMap[T, T]()
 
-  def intern(value: T): T = {
-    cache.getOrElseUpdate(value, value)
-  }
+  def intern(value: T): T = cache.computeIfAbsent(value, _ => value)
 
   def clean(): Unit = {
-    cache = new mutable.HashMap[T, T]()
+    cache = new ConcurrentHashMap[T, T]()
   }
 }
@@ -15,22 +15,22 @@ package com.nawforce.pkgforce.names
 
 import com.nawforce.pkgforce.memory.CleanableCache
 
-import scala.collection.mutable
+import java.util.concurrent.ConcurrentHashMap
 
 /* Common names & Name interning support. */
 object Names extends CleanableCache {
-  private var nameCache = mutable.HashMap[String, Name]()
+  // Replaced as a whole when cleaned so lookups never need to lock
+  @volatile private var nameCache = new ConcurrentHashMap[String, Name]()
 
   def apply(name: String): Name             = cache(name)
   def apply(name: Name): Name               = cache(name.value)
   def safeApply(name: String): Option[Name] = Option(name).filterNot(_.isEmpty).map(n => Name(n))
 
-  private def cache(value: String): Name = {
-    nameCache.getOrElseUpdate(value, { new Name(value) })
-  }
+  private def cache(value: String): Name =
+    nameCache.computeIfAbsent(value, value => new Name(value))
 
   override def clean(): Unit = {
-    nameCache = new mutable.HashMap[String, Name]()
+    nameCache = new ConcurrentHashMap[String, Name]()
   }
 
   lazy val Empty: Name                   = cache("")
@@ -15,6 +15,7 @@ package com.nawforce.pkgforce.stream
 
 import com.nawforce.pkgforce.diagnostics.Issue
 import com.nawforce.pkgforce.documents._
+import com.nawforce.runtime.platform.Pipeline
 
 import scala.collection.compat.immutable.ArraySeq
 
@@ -49,18 +50,52 @@ class PackageStream(val events: ArraySeq[PackageEvent]) {
   def components: ArraySeq[ComponentEvent] = events.collect { case e: ComponentEvent => e }
 }
 
+/** Events for a DocumentIndex, if the events are not consumed to the end the stream should be closed to stop any
+  * generators that are running ahead of the consumer.
+  */
+final class PackageEventStream(events: Iterator[PackageEvent], generators: Seq[AutoCloseable])
+    extends Iterator[PackageEvent]
+    with AutoCloseable {
+
+  override def hasNext: Boolean = events.hasNext
+
+  override def next(): PackageEvent = events.next()
+
+  override def close(): Unit = generators.foreach(_.close())
+}
+
 object PackageStream {
   def apply(index: DocumentIndex): PackageStream = {
     new PackageStream(ArraySeq.unsafeWrapArray(eventStream(index).toArray))
   }
 
-  def eventStream(index: DocumentIndex): Iterator[PackageEvent] = {
-    LabelGenerator.iterator(index) ++
-      ComponentGenerator.iterator(index) ++
-      PageGenerator.iterator(index) ++
-      FlowGenerator.iterator(index) ++
-      SObjectGenerator.iterator(index) ++
-      ApexGenerator.iterator(index) ++
-      TriggerGenerator.iterator(index)
+  /** Maximum number of events a generator may run ahead of the consumer when pipelined */
+  final val PIPELINE_CAPACITY: Int = 1024
+
+  /** Events for a DocumentIndex in publishing order. When pipelined each generator runs ahead of the consumer on its
+    * own thread so that disk reads & XML parsing overlap with event handling, the publishing order is unchanged.
+    */
+  def eventStream(index: DocumentIndex, pipelined: Boolean = false): PackageEventStream = {
+    val generators: Seq[(String, DocumentIndex => Iterator[PackageEvent])] = Seq(
+      ("labels", LabelGenerator.iterator),
+      ("components", ComponentGenerator.iterator),
+      ("pages", PageGenerator.iterator),
+      ("flows", FlowGenerator.iterator),
+      ("sobjects", SObjectGenerator.iterator),
+      ("classes", ApexGenerator.iterator),
+      ("triggers", TriggerGenerator.iterator)
+    )
+
+    if (pipelined) {
+      val readers = generators
+        .map(generator => {
+          Pipeline.readAhead(s"${generator._1} generator", PIPELINE_CAPACITY) { () =>
+            generator._2(index)
+          }
+        })
+      new PackageEventStream(readers.iterator.flatten, readers)
+    } else {
+      new PackageEventStream(generators.iterator.flatMap(_._2(index)), Seq())
+    }
   }
 }
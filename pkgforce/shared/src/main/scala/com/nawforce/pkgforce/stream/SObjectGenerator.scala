@@ -19,6 +19,7 @@ import com.nawforce.pkgforce.documents._
 import com.nawforce.pkgforce.names.Name
 import com.nawforce.pkgforce.path.{Location, PathLike, PathLocation}
 import com.nawforce.pkgforce.xml.{XMLDocumentLike, XMLElementLike, XMLException, XMLFactory}
+import com.nawforce.runtime.platform.Parallel
 import com.nawforce.runtime.xml.XMLDocument
 
 import scala.collection.compat.immutable.ArraySeq
@@ -64,11 +65,16 @@ object SObjectGenerator {
 
   private def iterator(documents: Iterator[MetadataDocument]): Iterator[PackageEvent] = {
 
+    // Each SObject (and its SFDX field, fieldSet & sharingReason files) is parsed independently so these can be
+    // handled in parallel, results are in document order so the output is not dependent on scheduling
+    val parsed = Parallel.map(ArraySeq.from(documents))(document => {
+      (document.name, toEvents(document).toArray)
+    })
+
     // SObjects need ordering so lookup target is output before the object using lookup
-    val eventsByName =
-      documents.map(document => (document.name, toEvents(document).toArray)).to(mutable.Map)
-    val emitted = new mutable.HashSet[Name]()
-    val output  = new mutable.ArrayBuffer[Array[PackageEvent]]()
+    val eventsByName = parsed.to(mutable.Map)
+    val emitted      = new mutable.HashSet[Name]()
+    val output       = new mutable.ArrayBuffer[Array[PackageEvent]]()
 
     var found = true
     while (found && eventsByName.nonEmpty) {
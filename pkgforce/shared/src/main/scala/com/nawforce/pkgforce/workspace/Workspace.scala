@@ -24,6 +24,9 @@ import com.nawforce.pkgforce.sfdx.{
   WorkspaceConfig
 }
 import com.nawforce.pkgforce.stream.{IssuesEvent, PackageEvent, PackageStream}
+import com.nawforce.runtime.platform.Parallel
+
+import scala.collection.compat.immutable.ArraySeq
 
 /** Metadata workspace, maintains information on available metadata within a project/package.
   *
@@ -37,11 +40,12 @@ import com.nawforce.pkgforce.stream.{IssuesEvent, PackageEvent, PackageStream}
   */
 case class Workspace(layers: Seq[NamespaceLayer]) {
 
-  // Document indexes for each layer of actual metadata
-  val indexes: Map[ModuleLayer, IssuesAnd[DocumentIndex]] =
-    layers.foldLeft(Map[ModuleLayer, IssuesAnd[DocumentIndex]]())(
-      (acc, layer) => acc ++ layer.indexes
-    )
+  // Document indexes for each layer of actual metadata, module layers are independent so are indexed in parallel
+  val indexes: Map[ModuleLayer, IssuesAnd[DocumentIndex]] = {
+    val moduleLayers =
+      ArraySeq.from(layers.flatMap(layer => layer.layers.map(module => (layer.namespace, module))))
+    Parallel.map(moduleLayers)(layer => (layer._2, layer._2.index(layer._1))).toMap
+  }
 
   def get(typeName: TypeName): Set[MetadataDocument] = {
     val indexes = deployOrderedIndexes.toSeq.reverse.map(_.value)
@@ -121,6 +121,40 @@ class DocumentIndexTest extends AnyFunSuite with BeforeAndAfter {
     }
   }
 
+  test("duplicate classes prefer shallowest") {
+    FileSystemHelper.run(
+      Map[String, String](
+        "pkg/a/b/Foo.cls" -> "public class Foo {}",
+        "pkg/Foo.cls"     -> "public class Foo {}"
+      )
+    ) { root: PathLike =>
+      val index = DocumentIndex(logger, None, root.join("pkg"))
+      assert(
+        index.get(ApexNature).toList ==
+          List(ApexClassDocument(root.join("pkg").join("Foo.cls"), Name("Foo")))
+      )
+      assert(logger.issues.head.path == root.join("pkg").join("a").join("b").join("Foo.cls"))
+    }
+  }
+
+  test("forceignore directory is pruned") {
+    FileSystemHelper.run(
+      Map[String, String](
+        ".forceignore"        -> "pkg/bar/",
+        "pkg/Foo.cls"         -> "public class Foo {}",
+        "pkg/bar/Bar.cls"     -> "public class Bar {}",
+        "pkg/bar/baz/Baz.cls" -> "public class Baz {}"
+      )
+    ) { root: PathLike =>
+      val index = DocumentIndex(logger, None, root, root.join("pkg"))
+      assert(logger.issues.isEmpty)
+      assert(
+        index.get(ApexNature).toList ==
+          List(ApexClassDocument(root.join("pkg").join("Foo.cls"), Name("Foo")))
+      )
+    }
+  }
+
   test("duplicate labels no error") {
     FileSystemHelper.run(
       Map[String, String](
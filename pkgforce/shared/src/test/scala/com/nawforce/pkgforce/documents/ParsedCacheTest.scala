@@ -167,4 +167,256 @@ class ParsedCacheTest extends AnyFunSuite with BeforeAndAfter {
       cache.get(PackageContext(Some("test"), Array(), Array(), Array()), "Foo", Array()).isEmpty
     )
   }
+
+  test("pack key insert/recover") {
+    val cache = ParsedCache.create(1, PackBackend).getOrElse(throw new NoSuchElementException())
+    cache.upsert(emptyPackageContext, "Foo", Array(), "Hello".getBytes())
+    assert(cache.get(emptyPackageContext, "", Array()).isEmpty)
+    assert(cache.get(emptyPackageContext, "Foo", Array()).get.sameElements("Hello".getBytes()))
+    assert(cache.get(emptyPackageContext, "Foo", "Foo".getBytes).isEmpty)
+  }
+
+  test("pack overwrite entry") {
+    val cache = ParsedCache.create(1, PackBackend).getOrElse(throw new NoSuchElementException())
+    cache.upsert(emptyPackageContext, "Foo", Array(), "Hello".getBytes())
+    cache.upsert(emptyPackageContext, "Foo", Array(), "Goodbye".getBytes())
+    assert(cache.get(emptyPackageContext, "Foo", Array()).get.sameElements("Goodbye".getBytes()))
+  }
+
+  test("pack entries recovered on reopen") {
+    val cache = ParsedCache.create(1, PackBackend).getOrElse(throw new NoSuchElementException())
+    cache.upsert(emptyPackageContext, "Foo", Array(), "Hello".getBytes())
+    cache.upsert(emptyPackageContext, "Bar", Array(), "Goodbye".getBytes())
+    cache.save()
+
+    val reopened = ParsedCache.create(1, PackBackend).getOrElse(throw new NoSuchElementException())
+    assert(reopened.get(emptyPackageContext, "Foo", Array()).get.sameElements("Hello".getBytes()))
+    assert(reopened.get(emptyPackageContext, "Bar", Array()).get.sameElements("Goodbye".getBytes()))
+  }
+
+  test("pack not shared between versions") {
+    val cache = ParsedCache.create(1, PackBackend).getOrElse(throw new NoSuchElementException())
+    cache.upsert(emptyPackageContext, "Foo", Array(), "Hello".getBytes())
+
+    val other = ParsedCache.create(2, PackBackend).getOrElse(throw new NoSuchElementException())
+    assert(other.get(emptyPackageContext, "Foo", Array()).isEmpty)
+  }
+
+  test("pack truncated record ignored") {
+    val cache = ParsedCache.create(1, PackBackend).getOrElse(throw new NoSuchElementException())
+    cache.upsert(emptyPackageContext, "Foo", Array(), "Hello".getBytes())
+    cache.upsert(emptyPackageContext, "Bar", Array(), "Goodbye".getBytes())
+    cache.save()
+
+    val packPath = PackStore
+      .open(cache.path, 1, ParsedCache.SIZE_LIMIT)
+      .getOrElse(throw new NoSuchElementException())
+      .path
+    val data = packPath.readBytes().getOrElse(throw new NoSuchElementException())
+    packPath.write(data.slice(0, data.length - 2))
+
+    val reopened = ParsedCache.create(1, PackBackend).getOrElse(throw new NoSuchElementException())
+    assert(reopened.get(emptyPackageContext, "Foo", Array()).get.sameElements("Hello".getBytes()))
+    assert(reopened.get(emptyPackageContext, "Bar", Array()).isEmpty)
+    reopened.upsert(emptyPackageContext, "Bar", Array(), "Goodbye".getBytes())
+    assert(reopened.get(emptyPackageContext, "Bar", Array()).get.sameElements("Goodbye".getBytes()))
+  }
+
+  test("pack compacted on expire") {
+    val store = ParsedCache
+      .create(1, PackBackend)
+      .flatMap(cache => PackStore.open(cache.path, 1, ParsedCache.SIZE_LIMIT))
+      .getOrElse(throw new NoSuchElementException())
+    val key = CacheKey(1, emptyPackageContext, "Foo", Array())
+    (1 to 10).foreach(i => {
+      store.put(key, s"Hello$i".getBytes())
+      store.save()
+    })
+    val uncompacted = store.path.size
+
+    store.expire(0)
+    assert(store.size == 1)
+    assert(store.path.size < uncompacted)
+    assert(store.get(key).get.sameElements("Hello10".getBytes()))
+  }
+
+  test("pack compaction keeps entries appended by another store") {
+    val first  = packStore()
+    val second = packStore()
+    (1 to 10).foreach(i => {
+      first.put(key("Foo"), s"Hello$i".getBytes())
+      first.save()
+    })
+    second.put(key("Bar"), "Goodbye".getBytes())
+    second.save()
+
+    first.expire(0)
+    assert(first.size == 2)
+    assert(first.get(key("Bar")).get.sameElements("Goodbye".getBytes()))
+    assert(second.get(key("Foo")).get.sameElements("Hello10".getBytes()))
+
+    second.put(key("Baz"), "Again".getBytes())
+    second.save()
+    assert(packStore().size == 3)
+  }
+
+  test("pack puts written together when saved") {
+    val store = packStore()
+    store.put(key("Foo"), "Hello".getBytes())
+    store.put(key("Bar"), "Goodbye".getBytes())
+    store.put(key("Foo"), "Again".getBytes())
+    assert(store.get(key("Foo")).get.sameElements("Again".getBytes()))
+    assert(packStore().size == 0)
+
+    store.save()
+    val reopened = packStore()
+    assert(reopened.size == 2)
+    assert(reopened.get(key("Foo")).get.sameElements("Again".getBytes()))
+    assert(reopened.get(key("Bar")).get.sameElements("Goodbye".getBytes()))
+  }
+
+  test("pack puts written without save when too large") {
+    val store = packStore()
+    store.put(key("Foo"), new Array[Byte](PackStore.MAX_UNWRITTEN_SIZE.toInt + 1))
+    assert(packStore().get(key("Foo")).nonEmpty)
+  }
+
+  test("pack closed store returns nothing") {
+    val store = packStore()
+    store.put(key("Foo"), "Hello".getBytes())
+    store.close()
+    assert(store.get(key("Foo")).isEmpty)
+    assert(packStore().get(key("Foo")).get.sameElements("Hello".getBytes()))
+  }
+
+  test("pack usable after clear") {
+    val cache = ParsedCache.create(1, PackBackend).getOrElse(throw new NoSuchElementException())
+    cache.upsert(emptyPackageContext, "Foo", Array(), "Hello".getBytes())
+    cache.clear()
+    assert(cache.get(emptyPackageContext, "Foo", Array()).isEmpty)
+    cache.upsert(emptyPackageContext, "Foo", Array(), "Goodbye".getBytes())
+    assert(cache.get(emptyPackageContext, "Foo", Array()).get.sameElements("Goodbye".getBytes()))
+  }
+
+  test("pack least recently used dropped over size limit") {
+    val store = packStore(100)
+    Seq("A", "B", "C", "D").foreach(name => store.put(key(name), new Array[Byte](40)))
+    store.save()
+    assert(store.get(key("A")).nonEmpty)
+    val uncompacted = store.path.size
+
+    assert(store.expire(0))
+    assert(store.size == 2)
+    assert(store.path.size < uncompacted)
+    assert(store.get(key("A")).nonEmpty)
+    assert(store.get(key("B")).isEmpty)
+    assert(store.get(key("C")).isEmpty)
+    assert(store.get(key("D")).nonEmpty)
+  }
+
+  test("pack old records dropped") {
+    val store = packStore()
+    store.put(key("A"), "Hello".getBytes())
+    assert(store.expire(Long.MaxValue))
+    assert(store.size == 0)
+    assert(store.get(key("A")).isEmpty)
+    assert(packStore().get(key("A")).isEmpty)
+  }
+
+  test("pack record uses recovered on reopen") {
+    val store = packStore()
+    store.put(key("A"), "Hello".getBytes())
+    store.put(key("B"), "Goodbye".getBytes())
+    store.save()
+    Thread.sleep(10)
+    store.get(key("A"))
+    store.save()
+
+    val reopened = packStore(PackStore.HEADER_SIZE + PackStore.RECORD_HEADER_SIZE + 5)
+    assert(reopened.expire(0))
+    assert(reopened.size == 1)
+    assert(reopened.get(key("A")).nonEmpty)
+    assert(reopened.get(key("B")).isEmpty)
+  }
+
+  private def packStore(limit: Long = ParsedCache.SIZE_LIMIT): PackStore = {
+    val cache = ParsedCache.create(1).getOrElse(throw new NoSuchElementException())
+    PackStore
+      .open(cache.path, 1, limit)
+      .getOrElse(throw new NoSuchElementException())
+  }
+
+  private def directoryStore(limit: Long): DirectoryStore = {
+    val cache = ParsedCache.create(1).getOrElse(throw new NoSuchElementException())
+    new DirectoryStore(cache.path, limit)
+  }
+
+  private def key(name: String): CacheKey = CacheKey(1, emptyPackageContext, name, Array())
+
+  test("least recently used evicted over size limit") {
+    val store = directoryStore(100)
+    Seq("A", "B", "C", "D").foreach(name => store.put(key(name), new Array[Byte](40)))
+    assert(store.get(key("A")).nonEmpty)
+
+    assert(store.expire(0))
+    assert(store.size == 2)
+    assert(store.get(key("A")).nonEmpty)
+    assert(store.get(key("B")).isEmpty)
+    assert(store.get(key("C")).isEmpty)
+    assert(store.get(key("D")).nonEmpty)
+  }
+
+  test("old entries expired") {
+    val store = directoryStore(ParsedCache.SIZE_LIMIT)
+    store.put(key("A"), "Hello".getBytes())
+    assert(store.expire(Long.MaxValue))
+    assert(store.size == 0)
+    assert(store.get(key("A")).isEmpty)
+  }
+
+  test("index recovered on reopen") {
+    val store = directoryStore(ParsedCache.SIZE_LIMIT)
+    store.put(key("A"), "Hello".getBytes())
+    store.put(key("B"), "Goodbye".getBytes())
+    assert(store.expire(0))
+
+    val reopened = directoryStore(ParsedCache.SIZE_LIMIT)
+    assert(reopened.size == 2)
+  }
+
+  test("index seeded from existing entries") {
+    val store = directoryStore(ParsedCache.SIZE_LIMIT)
+    store.put(key("A"), "Hello".getBytes())
+    store.put(key("B"), "Goodbye".getBytes())
+
+    val reopened = directoryStore(ParsedCache.SIZE_LIMIT)
+    assert(reopened.size == 0)
+    assert(reopened.expire(Long.MaxValue))
+    assert(reopened.get(key("A")).isEmpty)
+    assert(reopened.get(key("B")).isEmpty)
+  }
+
+  test("untracked entries added to an existing index") {
+    val store = directoryStore(ParsedCache.SIZE_LIMIT)
+    store.put(key("A"), "Hello".getBytes())
+    store.save()
+    store.put(key("B"), "Goodbye".getBytes())
+
+    val reopened = directoryStore(ParsedCache.SIZE_LIMIT)
+    assert(reopened.size == 1)
+    assert(reopened.expire(Long.MaxValue))
+    assert(reopened.get(key("A")).isEmpty)
+    assert(reopened.get(key("B")).isEmpty)
+  }
+
+  test("index saves from stores sharing a directory are merged") {
+    val first  = directoryStore(ParsedCache.SIZE_LIMIT)
+    val second = directoryStore(ParsedCache.SIZE_LIMIT)
+    first.put(key("A"), "Hello".getBytes())
+    second.put(key("B"), "Goodbye".getBytes())
+    first.save()
+    second.save()
+
+    assert(directoryStore(ParsedCache.SIZE_LIMIT).size == 2)
+  }
 }
@@ -0,0 +1,115 @@
+/*
+ Copyright (c) 2022 Kevin Jones, All rights reserved.
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 1. Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+ 2. Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+ 3. The name of the author may not be used to endorse or promote products
+    derived from this software without specific prior written permission.
+ */
+
+package com.nawforce.pkgforce.documents
+
+import com.nawforce.pkgforce.path.PathLike
+import com.nawforce.runtime.FileSystemHelper
+import org.scalatest.BeforeAndAfter
+import org.scalatest.funsuite.AnyFunSuite
+
+class SourceManifestTest extends AnyFunSuite with BeforeAndAfter {
+
+  private val emptyPackageContext = PackageContext(None, Array(), Array(), Array())
+
+  before {
+    ParsedCache.clear()
+  }
+
+  after {
+    ParsedCache.clear()
+  }
+
+  private def afterWrite(path: PathLike): Long =
+    path.lastModified().get + SourceManifest.RACY_WINDOW + 1
+
+  test("entry has content source key") {
+    FileSystemHelper.runTempDir(Map("Foo.cls" -> "public class Foo {}")) { root: PathLike =>
+      val path  = root.join("Foo.cls")
+      val entry = ManifestEntry(path, "Foo").get
+      assert(entry.size == path.size)
+      assert(path.lastModified().contains(entry.lastModified))
+      assert(entry.sourceKey == CacheKey.sourceKey("Foo", path.readBytes().toOption.get))
+    }
+  }
+
+  test("unchanged file found") {
+    FileSystemHelper.runTempDir(Map("Foo.cls" -> "public class Foo {}")) { root: PathLike =>
+      val path     = root.join("Foo.cls")
+      val entry    = ManifestEntry(path, "Foo").get
+      val manifest = SourceManifest(afterWrite(path), Map(path.toString -> entry))
+      assert(manifest.unchanged(path).contains(entry))
+    }
+  }
+
+  test("recently modified file not trusted") {
+    FileSystemHelper.runTempDir(Map("Foo.cls" -> "public class Foo {}")) { root: PathLike =>
+      val path     = root.join("Foo.cls")
+      val entry    = ManifestEntry(path, "Foo").get
+      val manifest = SourceManifest(path.lastModified().get, Map(path.toString -> entry))
+      assert(manifest.unchanged(path).isEmpty)
+    }
+  }
+
+  test("size change not found") {
+    FileSystemHelper.runTempDir(Map("Foo.cls" -> "public class Foo {}")) { root: PathLike =>
+      val path     = root.join("Foo.cls")
+      val entry    = ManifestEntry(path, "Foo").get
+      val manifest = SourceManifest(afterWrite(path), Map(path.toString -> entry.copy(size = 1)))
+      assert(manifest.unchanged(path).isEmpty)
+    }
+  }
+
+  test("timestamp change not found") {
+    FileSystemHelper.runTempDir(Map("Foo.cls" -> "public class Foo {}")) { root: PathLike =>
+      val path  = root.join("Foo.cls")
+      val entry = ManifestEntry(path, "Foo").get
+      val manifest = SourceManifest(
+        afterWrite(path),
+        Map(path.toString -> entry.copy(lastModified = entry.lastModified - 1000))
+      )
+      assert(manifest.unchanged(path).isEmpty)
+    }
+  }
+
+  test("missing file not found") {
+    FileSystemHelper.runTempDir(Map("Foo.cls" -> "public class Foo {}")) { root: PathLike =>
+      val path     = root.join("Foo.cls")
+      val entry    = ManifestEntry(path, "Foo").get
+      val manifest = SourceManifest(afterWrite(path), Map(path.toString -> entry))
+      assert(manifest.unchanged(root.join("Bar.cls")).isEmpty)
+    }
+  }
+
+  test("manifest save/load") {
+    FileSystemHelper.runTempDir(Map("Foo.cls" -> "public class Foo {}")) { root: PathLike =>
+      val path = root.join("Foo.cls")
+      val manifest =
+        SourceManifest(afterWrite(path), Map(path.toString -> ManifestEntry(path, "Foo").get))
+      val cache = ParsedCache.create(1).getOrElse(throw new NoSuchElementException())
+      assert(SourceManifest.load(cache, emptyPackageContext, root) == SourceManifest.empty)
+
+      SourceManifest.save(cache, emptyPackageContext, root, manifest)
+      assert(SourceManifest.load(cache, emptyPackageContext, root) == manifest)
+      assert(
+        SourceManifest
+          .load(
+            cache,
+            PackageContext(Some("ns"), Array(), Array(), Array()),
+            root
+          ) == SourceManifest.empty
+      )
+    }
+  }
+}
@@ -369,4 +369,61 @@ class SummaryTest extends AnyFunSuite {
     )
   }
 
+  private def describe(node: ApexNode): String = {
+    s"${node.nature} ${node.name} ${node.location} ${node.idLocation} ${node.signature} ${node.description} " +
+      s"${node.collectIssues().length} ${node.children.map(describe).mkString("[", ",", "]")}"
+  }
+
+  test("Outline summary matches full summary") {
+    val path = Path("Dummy.cls")
+    val source =
+      """public virtual class Dummy extends Base {
+        |  private static final Map<String, Integer> values = new Map<String, Integer>{'a' => 1};
+        |  static { values.put('b', 2); }
+        |  { if (values.isEmpty()) { values.put('c', 3); } }
+        |  public String name { get { return name == null ? '' : name; } private set { name = value; } }
+        |  public Integer count { get; set; }
+        |  public Dummy(String name) { this.name = name; }
+        |  public virtual List<Account> find(Set<Id> ids) {
+        |    for (Account a : [SELECT Id FROM Account WHERE Id IN :ids]) { System.debug(a); }
+        |    return new List<Account>{ new Account(Name = 'x') };
+        |  }
+        |  public interface Finder { List<Account> find(Set<Id> ids); }
+        |  public enum Mode { READ, WRITE }
+        |  private class Inner { void run() { Integer i = 0; while (i < 10) { i++; } } }
+        |}""".stripMargin
+
+    val cp     = CodeParser(path, SourceData(source))
+    val result = cp.parseClass()
+    assert(result.issues.isEmpty)
+
+    val outlineCp     = CodeParser(path, SourceData(source))
+    val outlineResult = outlineCp.parseClassOutline()
+    assert(outlineResult.issues.isEmpty)
+
+    assert(
+      describe(ApexNode(outlineCp, outlineResult.value).get) == describe(
+        ApexNode(cp, result.value).get
+      )
+    )
+  }
+
+  test("Outline ignores errors in blocks") {
+    val path   = Path("Dummy.cls")
+    val source = "public class Dummy { void func() { Integer a = ; } public Integer b; }"
+    assert(CodeParser(path, SourceData(source)).parseClass().issues.nonEmpty)
+
+    val cp     = CodeParser(path, SourceData(source))
+    val result = cp.parseClassOutline()
+    assert(result.issues.isEmpty)
+    val root = ApexNode(cp, result.value).get
+    assert(root.children.map(_.name) == ArraySeq(Name("func"), Name("b")))
+  }
+
+  test("Outline reports declaration errors") {
+    val path = Path("Dummy.cls")
+    val result =
+      CodeParser(path, SourceData("public class Dummy { void func( {} }")).parseClassOutline()
+    assert(result.issues.nonEmpty)
+  }
 }
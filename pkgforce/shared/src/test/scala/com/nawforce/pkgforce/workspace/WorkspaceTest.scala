@@ -832,4 +832,55 @@ class WorkspaceTest extends AnyFunSuite with Matchers {
       }
     }
   }
+
+  test("Many Custom Objects (sfdx) lookup ordered") {
+    def field(name: String, lookup: Option[String]): String = {
+      s"""<?xml version="1.0" encoding="UTF-8"?>
+         |<CustomField xmlns="http://soap.sforce.com/2006/04/metadata">
+         |    <fullName>$name</fullName>
+         |    <type>${if (lookup.nonEmpty) "Lookup" else "Text"}</type>
+         |    ${lookup.map(target => s"<referenceTo>$target</referenceTo>").getOrElse("")}
+         |    ${lookup.map(_ => "<relationshipName>Lookup</relationshipName>").getOrElse("")}
+         |</CustomField>
+         |""".stripMargin
+    }
+
+    // Each object looks up the next so they must be output in reverse
+    val count = 50
+    val files = (0 until count).flatMap(i => {
+      Seq(
+        s"pkg/Obj$i/Obj$i.object-meta.xml"         -> "<CustomObject xmlns=\"http://soap.sforce.com/2006/04/metadata\"/>",
+        s"pkg/Obj$i/fields/Name__c.field-meta.xml" -> field("Name__c", None)
+      ) ++ (if (i < count - 1)
+              Seq(
+                s"pkg/Obj$i/fields/Lookup__c.field-meta.xml" -> field(
+                  "Lookup__c",
+                  Some(s"Obj${i + 1}")
+                )
+              )
+            else Seq())
+    })
+
+    FileSystemHelper.run(files.toMap) { root: PathLike =>
+      val issuesAndWS = Workspace(root)
+      assert(issuesAndWS.issues.isEmpty)
+      assert(issuesAndWS.value.nonEmpty)
+
+      val events = issuesAndWS.value.get.events.toList
+      assert(
+        events.collect { case e: SObjectEvent => e.reportingPath } ==
+          (0 until count).reverse.map(i => root.join("pkg").join(s"Obj$i"))
+      )
+
+      // Fields follow the object they belong to
+      var current: Option[PathLike] = None
+      events.foreach {
+        case e: SObjectEvent => current = Some(e.reportingPath)
+        case e: CustomFieldEvent =>
+          assert(current.contains(e.sourceInfo.location.path.parent.parent))
+        case e => fail(s"Unexpected event $e")
+      }
+      assert(events.count(_.isInstanceOf[CustomFieldEvent]) == count * 2 - 1)
+    }
+  }
 }